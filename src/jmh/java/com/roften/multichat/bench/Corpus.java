@@ -0,0 +1,46 @@
+package com.roften.multichat.bench;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checked-in benchmark inputs (src/jmh/resources/corpus): one sample per line, blank lines skipped.
+ *
+ * <ul>
+ *   <li>{@code prefixes.txt} - LuckPerms prefixes in every supported format (legacy, hex, MiniMessage, gradients).</li>
+ *   <li>{@code chat.txt} - typed chat lines: selectors, @mentions, colors, long plain text.</li>
+ * </ul>
+ */
+public final class Corpus {
+    private Corpus() {}
+
+    public static List<String> prefixes() {
+        return lines("prefixes.txt");
+    }
+
+    public static List<String> chat() {
+        return lines("chat.txt");
+    }
+
+    public static List<String> lines(String name) {
+        String path = "/corpus/" + name;
+        try (InputStream in = Corpus.class.getResourceAsStream(path)) {
+            if (in == null) throw new IllegalStateException("Missing benchmark corpus " + path);
+            List<String> out = new ArrayList<>();
+            BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (!line.isEmpty()) out.add(line);
+            }
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.roften.multichat.chat;
+
+import com.roften.multichat.bench.Corpus;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Channel selection on send ({@link ChatChannel#parseOutgoing}) and channel detection on receive
+ * ({@link ChatChannel#detectFromComponent}). One operation = the whole chat corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatChannelBenchmark {
+    private String[] typed;
+    private Component[] received;
+
+    @Setup
+    public void setup() {
+        // Built-in selectors, as if the config had default values.
+        ChatChannel.compileAliases("$", null, null);
+
+        List<String> chat = Corpus.chat();
+        typed = chat.toArray(String[]::new);
+
+        // Lines as the client receives them: ours (badge with insertion token, like ChatChannel#channelBadge)
+        // mixed with foreign system lines that have to be scanned completely.
+        ChatChannel[] channels = ChatChannel.values();
+        received = new Component[chat.size()];
+        for (int i = 0; i < received.length; i++) {
+            String text = chat.get(i);
+            if (i % 4 == 3) {
+                received[i] = Component.empty()
+                        .append(Component.literal("[Server] ").withStyle(ChatFormatting.LIGHT_PURPLE))
+                        .append(Component.literal(text))
+                        .append(Component.literal(" (" + i + ")").withStyle(ChatFormatting.GRAY));
+                continue;
+            }
+            ChatChannel ch = channels[i % channels.length];
+            received[i] = Component.empty()
+                    .append(Component.literal("[12:34] ").withStyle(ChatFormatting.GRAY))
+                    .append(Component.literal("[" + ch.shortTag + "]")
+                            .withStyle(s -> s.withInsertion("avilixchat:channel=" + ch.shortTag)))
+                    .append(Component.literal("[VIP] ").withStyle(ChatFormatting.GOLD))
+                    .append(Component.literal("Player" + i))
+                    .append(Component.literal(": ").withStyle(ChatFormatting.GRAY))
+                    .append(Component.literal(text));
+        }
+    }
+
+    @Benchmark
+    public void parseOutgoing(Blackhole bh) {
+        for (String s : typed) bh.consume(ChatChannel.parseOutgoing(s));
+    }
+
+    @Benchmark
+    public void detectFromComponent(Blackhole bh) {
+        for (Component c : received) bh.consume(ChatChannel.detectFromComponent(c));
+    }
+}
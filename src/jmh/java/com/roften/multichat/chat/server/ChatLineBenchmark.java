@@ -0,0 +1,85 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.bench.Corpus;
+import com.roften.multichat.compat.FormattedTextCache;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-message server work that does not need a running server: assembling the chat line from its
+ * header pieces (what {@link RoutedMessage} does per variant) and @mention extraction.
+ * One operation = the whole chat corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChatLineBenchmark {
+    private ChatFormatTemplate template;
+    private Component time;
+    private Component badge;
+    private Component spyBadge;
+    private Component[] prefixes;
+    private Component[] names;
+    private Component[] messages;
+    private String[] typed;
+
+    @Setup
+    public void setup() {
+        template = ChatFormatTemplate.compile(MultiChatConfig.DEFAULT_CHAT_FORMAT);
+        time = Component.literal("[12:34] ").withStyle(ChatFormatting.GRAY);
+        badge = Component.literal("[G] ").withStyle(s -> s.withColor(ChatFormatting.WHITE).withInsertion("avilixchat:channel=G"));
+        spyBadge = Component.literal("[G] ").withStyle(ChatFormatting.GRAY);
+
+        List<String> p = Corpus.prefixes();
+        prefixes = new Component[p.size()];
+        for (int i = 0; i < prefixes.length; i++) {
+            prefixes[i] = FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, p.get(i), true);
+        }
+
+        List<String> chat = Corpus.chat();
+        typed = chat.toArray(String[]::new);
+        names = new Component[typed.length];
+        messages = new Component[typed.length];
+        for (int i = 0; i < typed.length; i++) {
+            names[i] = Component.literal("Player_" + i).withStyle(ChatFormatting.values()[i % 16]);
+            messages[i] = FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, typed[i], false);
+        }
+    }
+
+    @Benchmark
+    public void headerAssembly(Blackhole bh) {
+        for (int i = 0; i < messages.length; i++) {
+            bh.consume(template.render(false, time, badge, prefixes[i % prefixes.length], names[i], messages[i], null));
+        }
+    }
+
+    /** SPY copy: flattened gray slots, as built by {@link RoutedMessage#spy()}. */
+    @Benchmark
+    public void spyAssembly(Blackhole bh) {
+        for (int i = 0; i < messages.length; i++) {
+            Component prefix = prefixes[i % prefixes.length];
+            bh.consume(template.render(true, time, spyBadge,
+                    Component.literal(prefix.getString()).withStyle(ChatFormatting.GRAY),
+                    Component.literal(names[i].getString()).withStyle(ChatFormatting.GRAY),
+                    Component.literal(messages[i].getString()).withStyle(ChatFormatting.GRAY),
+                    ChatFormats.SPY_MARK));
+        }
+    }
+
+    @Benchmark
+    public void mentionExtraction(Blackhole bh) {
+        for (String s : typed) bh.consume(ServerChatRouter.mentionNames(s));
+    }
+}
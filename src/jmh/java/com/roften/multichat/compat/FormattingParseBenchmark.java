@@ -0,0 +1,94 @@
+package com.roften.multichat.compat;
+
+import com.roften.multichat.bench.Corpus;
+import com.roften.multichat.compat.baseline.OldLegacyComponentParser;
+import com.roften.multichat.compat.baseline.OldMiniMessageComponentParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Legacy / MiniMessage parsing over the prefix and chat corpora. One operation = the whole corpus.
+ *
+ * <p>The {@code *Baseline} benchmarks run the pre-rewrite parsers ({@code compat.baseline}) on the
+ * same inputs. The old MiniMessage parser has no trusted mode, so its prefix run skips click/hover
+ * work that the current one does.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormattingParseBenchmark {
+    private String[] legacyPrefixes;
+    private String[] miniMessagePrefixes;
+    private String[] chat;
+
+    @Setup
+    public void setup() {
+        List<String> legacy = new ArrayList<>();
+        List<String> mm = new ArrayList<>();
+        for (String p : Corpus.prefixes()) {
+            (MiniMessageComponentParser.looksLikeMiniMessage(p) ? mm : legacy).add(p);
+        }
+        legacyPrefixes = legacy.toArray(String[]::new);
+        miniMessagePrefixes = mm.toArray(String[]::new);
+        chat = Corpus.chat().toArray(String[]::new);
+
+        FormattedTextCache.configure(1024, 256);
+        for (String s : chat) FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, s, false);
+    }
+
+    @Benchmark
+    public void legacyPrefixes(Blackhole bh) {
+        for (String s : legacyPrefixes) bh.consume(LegacyComponentParser.parse(s));
+    }
+
+    @Benchmark
+    public void miniMessagePrefixes(Blackhole bh) {
+        for (String s : miniMessagePrefixes) bh.consume(MiniMessageComponentParser.parse(s, true));
+    }
+
+    @Benchmark
+    public void legacyPrefixesBaseline(Blackhole bh) {
+        for (String s : legacyPrefixes) bh.consume(OldLegacyComponentParser.parse(s));
+    }
+
+    @Benchmark
+    public void miniMessagePrefixesBaseline(Blackhole bh) {
+        for (String s : miniMessagePrefixes) bh.consume(OldMiniMessageComponentParser.parse(s));
+    }
+
+    /** What RoutedMessage did before the cache: AUTO detection + parse of every typed line. */
+    @Benchmark
+    public void chatUncached(Blackhole bh) {
+        for (String s : chat) {
+            bh.consume(MiniMessageComponentParser.looksLikeMiniMessage(s)
+                    ? MiniMessageComponentParser.parse(s)
+                    : LegacyComponentParser.parse(s));
+        }
+    }
+
+    /** {@link #chatUncached} with the pre-rewrite parsers. */
+    @Benchmark
+    public void chatUncachedBaseline(Blackhole bh) {
+        for (String s : chat) {
+            bh.consume(OldMiniMessageComponentParser.looksLikeMiniMessage(s)
+                    ? OldMiniMessageComponentParser.parse(s)
+                    : OldLegacyComponentParser.parse(s));
+        }
+    }
+
+    /** Warm {@link FormattedTextCache}: the cost of a repeated phrase. */
+    @Benchmark
+    public void chatCached(Blackhole bh) {
+        for (String s : chat) bh.consume(FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, s, false));
+    }
+}
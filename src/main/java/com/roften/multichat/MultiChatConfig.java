@@ -1,7 +1,14 @@
 package com.roften.multichat;
 
+import com.roften.multichat.chat.ChatChannel;
+import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.neoforge.common.ModConfigSpec;
 
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
 /**
  * Common configuration.
  *
@@ -27,6 +34,16 @@ public final class MultiChatConfig {
             .comment("How to parse LuckPerms prefixes: AUTO, LEGACY, MINIMESSAGE, PLAIN")
             .define("luckPermsPrefixFormat", "AUTO");
 
+    public static final ModConfigSpec.ConfigValue<String> CLAN_DELIVERY_MODE = BUILDER
+            .comment("How CLAN chat is delivered: DIRECT (our own line to online party/team members,",
+                     "one membership lookup) or OPM (run Open Parties and Claims' /opm as the sender).")
+            .define("clanDeliveryMode", "DIRECT");
+
+    /** True if CLAN chat should be handed to OPaC's /opm command instead of being delivered directly. */
+    public static boolean isClanViaOpm() {
+        return "OPM".equalsIgnoreCase(CLAN_DELIVERY_MODE.get().trim());
+    }
+
     // -------------------- Death messages --------------------
 
     public static final ModConfigSpec.BooleanValue DEATH_MESSAGES_LOCAL_ONLY = BUILDER
@@ -146,10 +163,16 @@ static {
     TEXT_COLOR_ADMIN  = BUILDER.comment("Default message text color for ADMIN when player text has no color, in '#RRGGBB'.").define("admin", "#FFFFFF");
     BUILDER.pop();
 
+    UI_TAB_LINE_CACHE = BUILDER
+            .comment("Client: keep each tab's rendered chat lines and swap them in on tab switch.",
+                     "Set to false if a chat mod needs every line re-added through the chat listener on switch.")
+            .define("tabLineCache", true);
+
     BUILDER.pop();
 }
 
 public static final ModConfigSpec.ConfigValue<String> UI_CHAT_SWITCH_KEY;
+public static final ModConfigSpec.BooleanValue UI_TAB_LINE_CACHE;
 public static final ModConfigSpec.ConfigValue<String> UI_TAB_GLOBAL;
 public static final ModConfigSpec.ConfigValue<String> UI_TAB_LOCAL;
 public static final ModConfigSpec.ConfigValue<String> UI_TAB_TRADE;
@@ -243,5 +266,314 @@ private static int parseHexRgb(String s, int fallback) {
         ADMIN_AREA_HISTORY_DEFAULT_MINUTES = AREA_HISTORY_DEFAULT_MINUTES;
     }
 
+    // -------------------- Chat selectors (aliases) --------------------
+    /** Per-channel legacy prefixes like "#t " / "#торг " (compiled into a trie on config load). */
+    public static final Map<ChatChannel, ModConfigSpec.ConfigValue<List<? extends String>>> CHAT_ALIASES = new EnumMap<>(ChatChannel.class);
+    /** Per-channel letters accepted right after the switch key: "$t", "$т". */
+    public static final Map<ChatChannel, ModConfigSpec.ConfigValue<List<? extends String>>> SWITCH_LETTERS = new EnumMap<>(ChatChannel.class);
+    /** Longest prefix / switch letter entry; they are synced to clients (UiConfigSyncPacket). */
+    public static final int MAX_SELECTOR_LENGTH = 32;
+
+    static {
+        BUILDER.push("chatSelectors");
+
+        BUILDER.push("prefixes");
+        for (ChatChannel ch : ChatChannel.values()) {
+            CHAT_ALIASES.put(ch, BUILDER
+                    .comment("Message prefixes that send to " + ch.name() + " (case-insensitive, include the trailing space, at most " + MAX_SELECTOR_LENGTH + " characters).")
+                    .defineList(ch.name().toLowerCase(Locale.ROOT), ch.defaultPrefixes, () -> "", o -> o instanceof String str && !str.isEmpty() && str.length() <= MAX_SELECTOR_LENGTH));
+        }
+        BUILDER.pop();
+
+        BUILDER.push("switchLetters");
+        for (ChatChannel ch : ChatChannel.values()) {
+            SWITCH_LETTERS.put(ch, BUILDER
+                    .comment("Letters that select " + ch.name() + " after chatSwitchKey, e.g. '$" + ch.defaultSwitchLetters.get(0) + " hello'.")
+                    .defineList(ch.name().toLowerCase(Locale.ROOT), ch.defaultSwitchLetters, () -> "", o -> o instanceof String str && !str.isEmpty() && str.length() <= MAX_SELECTOR_LENGTH));
+        }
+        BUILDER.pop();
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Chat line formats (server) --------------------
+    /** Per-channel chat line template, compiled on config load (see ChatFormats). */
+    public static final Map<ChatChannel, ModConfigSpec.ConfigValue<String>> CHAT_FORMATS = new EnumMap<>(ChatChannel.class);
+    public static final ModConfigSpec.ConfigValue<String> CHAT_TIME_FORMAT;
+    public static final ModConfigSpec.ConfigValue<String> DEATH_FORMAT;
+    public static final ModConfigSpec.ConfigValue<String> DEATH_TIME_FORMAT;
+
+    public static final String DEFAULT_CHAT_FORMAT = "{time}{badge}{prefix}{name}: {message}";
+    public static final String DEFAULT_DEATH_FORMAT = "{time} {badge} {message}";
+
+    static {
+        BUILDER.push("chatFormat");
+
+        BUILDER.push("channels");
+        for (ChatChannel ch : ChatChannel.values()) {
+            CHAT_FORMATS.put(ch, BUILDER
+                    .comment("Chat line layout for " + ch.name() + ".",
+                             "Slots: {time} {badge} {prefix} {name} {message}. Text between slots is GRAY, '&' color codes allowed.")
+                    .define(ch.name().toLowerCase(Locale.ROOT), DEFAULT_CHAT_FORMAT));
+        }
+        BUILDER.pop();
+
+        CHAT_TIME_FORMAT = BUILDER
+                .comment("java.time pattern for {time} in chat lines (rendered as [..]).")
+                .define("timeFormat", "HH:mm");
+        DEATH_FORMAT = BUILDER
+                .comment("Layout for routed death messages. Slots: {time} {badge} {message}.")
+                .define("death", DEFAULT_DEATH_FORMAT);
+        DEATH_TIME_FORMAT = BUILDER
+                .comment("java.time pattern for {time} in death messages.")
+                .define("deathTimeFormat", "HH:mm:ss");
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Parsed text cache (server) --------------------
+    /** Bounds for {@link com.roften.multichat.compat.FormattedTextCache}. */
+    public static final ModConfigSpec.IntValue TEXT_CACHE_MAX_ENTRIES;
+    public static final ModConfigSpec.IntValue TEXT_CACHE_MAX_LENGTH;
+
+    static {
+        BUILDER.push("textCache");
+
+        TEXT_CACHE_MAX_ENTRIES = BUILDER
+                .comment("How many parsed prefixes / name colors / chat messages to keep (LRU). 0 disables the cache.")
+                .defineInRange("maxEntries", 1024, 0, 65536);
+        TEXT_CACHE_MAX_LENGTH = BUILDER
+                .comment("Longer strings are parsed every time instead of being cached.")
+                .defineInRange("maxLength", 256, 0, 4096);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Gradients (server) --------------------
+    /** Resolution of MiniMessage gradient/rainbow output, see MiniMessageComponentParser. */
+    public static final ModConfigSpec.IntValue GRADIENT_COLOR_STEP;
+    public static final ModConfigSpec.IntValue GRADIENT_MAX_SEGMENTS;
+
+    static {
+        BUILDER.push("gradients");
+
+        GRADIENT_COLOR_STEP = BUILDER
+                .comment("Gradient colors are rounded to multiples of this per RGB channel (1 = exact).",
+                         "Neighbouring letters with the same rounded color are sent as one piece.")
+                .defineInRange("colorStep", 4, 1, 64);
+        GRADIENT_MAX_SEGMENTS = BUILDER
+                .comment("Maximum number of differently colored pieces in one gradient/rainbow.",
+                         "Fewer pieces = smaller chat packets for decorated prefixes.")
+                .defineInRange("maxSegments", 16, 1, 256);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Channel history (server) --------------------
+    /** How many recent messages per channel are kept in memory (see ChannelHistory). */
+    public static final Map<ChatChannel, ModConfigSpec.IntValue> CHANNEL_HISTORY_DEPTH = new EnumMap<>(ChatChannel.class);
+    public static final ModConfigSpec.IntValue CHANNEL_HISTORY_MAX_CLAN_GROUPS;
+
+    static {
+        BUILDER.push("channelHistory");
+
+        for (ChatChannel ch : ChatChannel.values()) {
+            int def = switch (ch) {
+                case LOCAL, CLAN -> 50;
+                default -> 100;
+            };
+            CHANNEL_HISTORY_DEPTH.put(ch, BUILDER
+                    .comment("Recent " + ch.name() + " messages kept in memory (join backfill, /avilixchat context). 0 = off."
+                            + (ch == ChatChannel.CLAN ? " Per party/team." : ""))
+                    .defineInRange(ch.name().toLowerCase(Locale.ROOT), def, 0, 1000));
+        }
+        CHANNEL_HISTORY_MAX_CLAN_GROUPS = BUILDER
+                .comment("Maximum number of parties/teams with CLAN history in memory (least recently active are dropped).")
+                .defineInRange("maxClanGroups", 256, 1, 10000);
+
+        BUILDER.pop();
+    }
+
+    public static Map<ChatChannel, Integer> getChannelHistoryDepths() {
+        Map<ChatChannel, Integer> out = new EnumMap<>(ChatChannel.class);
+        for (ChatChannel ch : ChatChannel.values()) out.put(ch, CHANNEL_HISTORY_DEPTH.get(ch).getAsInt());
+        return out;
+    }
+
+    // -------------------- History persistence (server) --------------------
+    public static final ModConfigSpec.BooleanValue HISTORY_PERSISTENCE_ENABLED;
+    public static final ModConfigSpec.IntValue HISTORY_SAVE_INTERVAL_MINUTES;
+
+    static {
+        BUILDER.push("historyPersistence");
+
+        HISTORY_PERSISTENCE_ENABLED = BUILDER
+                .comment("Save area and channel history to <world>/avilixchat/chat_history.bin and restore it on start.")
+                .define("enabled", true);
+        HISTORY_SAVE_INTERVAL_MINUTES = BUILDER
+                .comment("Minutes between background snapshots. 0 = only on server stop.")
+                .defineInRange("saveIntervalMinutes", 5, 0, 1440);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Structured chat lines (server) --------------------
+    public static final ModConfigSpec.BooleanValue STRUCTURED_CHAT_ENABLED;
+
+    static {
+        BUILDER.push("structuredChat");
+
+        STRUCTURED_CHAT_ENABLED = BUILDER
+                .comment("Send chat lines to modded clients as (header id, time, message) and each sender header only once.",
+                        "Vanilla clients always get normal system messages.")
+                .define("enabled", true);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Outbound bundling (server) --------------------
+    public static final ModConfigSpec.BooleanValue OUTBOUND_BUNDLE;
+    public static final ModConfigSpec.IntValue OUTBOUND_MAX_LINES_PER_TICK;
+
+    static {
+        BUILDER.push("outbound");
+
+        OUTBOUND_BUNDLE = BUILDER
+                .comment("Queue routed chat lines per recipient and send them as one bundle packet at the end of the tick.")
+                .define("bundle", true);
+        OUTBOUND_MAX_LINES_PER_TICK = BUILDER
+                .comment("Max chat lines per recipient per tick (bundle=true only); the rest is replaced by one summary line. 0 = no cap.")
+                .defineInRange("maxLinesPerTick", 0, 0, 4096);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Join backfill (server) --------------------
+    public static final ModConfigSpec.BooleanValue BACKFILL_ENABLED;
+    public static final ModConfigSpec.IntValue BACKFILL_MESSAGES_PER_CHANNEL;
+    public static final ModConfigSpec.IntValue BACKFILL_LOCAL_MINUTES;
+    public static final ModConfigSpec.IntValue BACKFILL_LINES_PER_PACKET;
+    public static final ModConfigSpec.IntValue BACKFILL_PACKETS_PER_TICK;
+
+    static {
+        BUILDER.push("backfill");
+
+        BACKFILL_ENABLED = BUILDER
+                .comment("Send recent channel history to players when they join (needs the mod on the client).")
+                .define("enabled", true);
+        BACKFILL_MESSAGES_PER_CHANNEL = BUILDER
+                .comment("Newest messages sent per channel (limited by channelHistory depths).")
+                .defineInRange("messagesPerChannel", 30, 0, 1000);
+        BACKFILL_LOCAL_MINUTES = BUILDER
+                .comment("LOCAL backfill: messages said within localRadiusBlocks of the join position in the last N minutes.")
+                .defineInRange("localMinutes", 15, 0, 1440);
+        BACKFILL_LINES_PER_PACKET = BUILDER
+                .comment("Lines per compressed backfill packet.")
+                .defineInRange("linesPerPacket", 25, 1, 500);
+        BACKFILL_PACKETS_PER_TICK = BUILDER
+                .comment("Backfill packets sent per server tick across all joining players.")
+                .defineInRange("packetsPerTick", 4, 1, 100);
+
+        BUILDER.pop();
+    }
+
+    // -------------------- Flood control (server) --------------------
+    /** Master switch for token-bucket flood control in the chat router. */
+    public static final ModConfigSpec.BooleanValue FLOOD_ENABLED;
+    /** Per-player bucket (all channels together). */
+    public static final ModConfigSpec.IntValue FLOOD_PLAYER_BURST;
+    public static final ModConfigSpec.IntValue FLOOD_PLAYER_PER_MINUTE;
+    /** Per-player, per-channel buckets ("slow mode"). Burst 0 disables the channel bucket. */
+    public static final ModConfigSpec.IntValue FLOOD_BURST_GLOBAL;
+    public static final ModConfigSpec.IntValue FLOOD_BURST_LOCAL;
+    public static final ModConfigSpec.IntValue FLOOD_BURST_TRADE;
+    public static final ModConfigSpec.IntValue FLOOD_BURST_CLAN;
+    public static final ModConfigSpec.IntValue FLOOD_BURST_ADMIN;
+    public static final ModConfigSpec.IntValue FLOOD_PER_MINUTE_GLOBAL;
+    public static final ModConfigSpec.IntValue FLOOD_PER_MINUTE_LOCAL;
+    public static final ModConfigSpec.IntValue FLOOD_PER_MINUTE_TRADE;
+    public static final ModConfigSpec.IntValue FLOOD_PER_MINUTE_CLAN;
+    public static final ModConfigSpec.IntValue FLOOD_PER_MINUTE_ADMIN;
+
+    static {
+        BUILDER.push("floodControl");
+
+        FLOOD_ENABLED = BUILDER
+                .comment("If true, limit how often players can send chat messages (token buckets).",
+                         "Players with the 'avilixchat.flood.bypass' node are not limited.",
+                         "Off by default; existing servers keep unlimited chat until they opt in.")
+                .define("enabled", false);
+
+        BUILDER.push("player");
+        FLOOD_PLAYER_BURST = BUILDER
+                .comment("How many messages a player can send in a quick burst (all channels together).")
+                .defineInRange("burst", 6, 1, 100);
+        FLOOD_PLAYER_PER_MINUTE = BUILDER
+                .comment("Sustained messages per minute per player (all channels together).")
+                .defineInRange("perMinute", 40, 1, 6000);
+        BUILDER.pop();
+
+        BUILDER.push("channelBurst");
+        FLOOD_BURST_GLOBAL = BUILDER.comment("Per-player burst for GLOBAL (0 = no channel limit).").defineInRange("global", 0, 0, 100);
+        FLOOD_BURST_LOCAL  = BUILDER.comment("Per-player burst for LOCAL (0 = no channel limit).").defineInRange("local", 0, 0, 100);
+        FLOOD_BURST_TRADE  = BUILDER.comment("Per-player burst for TRADE (0 = no channel limit).").defineInRange("trade", 0, 0, 100);
+        FLOOD_BURST_CLAN   = BUILDER.comment("Per-player burst for CLAN (0 = no channel limit).").defineInRange("clan", 0, 0, 100);
+        FLOOD_BURST_ADMIN  = BUILDER.comment("Per-player burst for ADMIN (0 = no channel limit).").defineInRange("admin", 0, 0, 100);
+        BUILDER.pop();
+
+        BUILDER.push("channelPerMinute");
+        FLOOD_PER_MINUTE_GLOBAL = BUILDER.comment("Sustained messages per minute per player in GLOBAL.").defineInRange("global", 20, 1, 6000);
+        FLOOD_PER_MINUTE_LOCAL  = BUILDER.comment("Sustained messages per minute per player in LOCAL.").defineInRange("local", 30, 1, 6000);
+        FLOOD_PER_MINUTE_TRADE  = BUILDER.comment("Sustained messages per minute per player in TRADE (slow mode, with a TRADE burst set).").defineInRange("trade", 4, 1, 6000);
+        FLOOD_PER_MINUTE_CLAN   = BUILDER.comment("Sustained messages per minute per player in CLAN.").defineInRange("clan", 30, 1, 6000);
+        FLOOD_PER_MINUTE_ADMIN  = BUILDER.comment("Sustained messages per minute per player in ADMIN.").defineInRange("admin", 60, 1, 6000);
+        BUILDER.pop();
+
+        BUILDER.pop();
+    }
+
+    public static int getFloodChannelBurst(com.roften.multichat.chat.ChatChannel ch) {
+        return switch (ch) {
+            case GLOBAL -> FLOOD_BURST_GLOBAL.getAsInt();
+            case LOCAL -> FLOOD_BURST_LOCAL.getAsInt();
+            case TRADE -> FLOOD_BURST_TRADE.getAsInt();
+            case CLAN -> FLOOD_BURST_CLAN.getAsInt();
+            case ADMIN -> FLOOD_BURST_ADMIN.getAsInt();
+        };
+    }
+
+    public static int getFloodChannelPerMinute(com.roften.multichat.chat.ChatChannel ch) {
+        return switch (ch) {
+            case GLOBAL -> FLOOD_PER_MINUTE_GLOBAL.getAsInt();
+            case LOCAL -> FLOOD_PER_MINUTE_LOCAL.getAsInt();
+            case TRADE -> FLOOD_PER_MINUTE_TRADE.getAsInt();
+            case CLAN -> FLOOD_PER_MINUTE_CLAN.getAsInt();
+            case ADMIN -> FLOOD_PER_MINUTE_ADMIN.getAsInt();
+        };
+    }
+
 public static final ModConfigSpec SPEC = BUILDER.build();
+
+    /**
+     * Recompiles derived, hot-path structures (selector trie, chat line templates, ...) whenever our config is loaded or reloaded.
+     * Registered on the MOD bus from {@link MultiChatMod}.
+     */
+    public static void onConfigLoad(ModConfigEvent event) {
+        if (event.getConfig().getSpec() != SPEC) return;
+
+        Map<ChatChannel, List<? extends String>> prefixes = new EnumMap<>(ChatChannel.class);
+        Map<ChatChannel, List<? extends String>> letters = new EnumMap<>(ChatChannel.class);
+        for (ChatChannel ch : ChatChannel.values()) {
+            prefixes.put(ch, CHAT_ALIASES.get(ch).get());
+            letters.put(ch, SWITCH_LETTERS.get(ch).get());
+        }
+        ChatChannel.compileAliases(UI_CHAT_SWITCH_KEY.get(), prefixes, letters);
+
+        com.roften.multichat.chat.server.ChatFormats.compile();
+        com.roften.multichat.compat.MiniMessageComponentParser.configureGradients(GRADIENT_COLOR_STEP.getAsInt(), GRADIENT_MAX_SEGMENTS.getAsInt());
+        com.roften.multichat.compat.FormattedTextCache.configure(TEXT_CACHE_MAX_ENTRIES.getAsInt(), TEXT_CACHE_MAX_LENGTH.getAsInt());
+        com.roften.multichat.chat.server.ChatHeaderCache.invalidateAll();
+        com.roften.multichat.chat.server.ChatHistoryBuffer.resize(AREA_HISTORY_MAX_MESSAGES.getAsInt());
+        com.roften.multichat.chat.server.ChannelHistory.configure(getChannelHistoryDepths(), CHANNEL_HISTORY_MAX_CLAN_GROUPS.getAsInt());
+    }
 }
@@ -7,6 +7,7 @@ import net.neoforged.bus.api.IEventBus;
 import net.neoforged.fml.ModContainer;
 import net.neoforged.fml.common.Mod;
 import net.neoforged.fml.config.ModConfig;
+import net.neoforged.fml.event.config.ModConfigEvent;
 import net.neoforged.fml.loading.FMLEnvironment;
 import com.roften.multichat.network.NetworkRegistration;
 import net.neoforged.neoforge.network.event.RegisterPayloadHandlersEvent;
@@ -20,6 +21,8 @@ public class MultiChatMod {
 
     public MultiChatMod(IEventBus modEventBus, ModContainer container) {
         container.registerConfig(ModConfig.Type.COMMON, MultiChatConfig.SPEC);
+        modEventBus.addListener((ModConfigEvent.Loading e) -> MultiChatConfig.onConfigLoad(e));
+        modEventBus.addListener((ModConfigEvent.Reloading e) -> MultiChatConfig.onConfigLoad(e));
         modEventBus.addListener((RegisterPayloadHandlersEvent e) -> NetworkRegistration.register(e));
 
         // GAME bus: commands must be registered on the main NeoForge event bus.
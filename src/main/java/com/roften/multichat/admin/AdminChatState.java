@@ -33,7 +33,7 @@ public final class AdminChatState {
 
     public static boolean hasAdminChatPermission(ServerPlayer player) {
         if (player == null) return false;
-        return Perms.has(player.createCommandSourceStack(), NODE_ADMIN_CHAT);
+        return Perms.has(player, NODE_ADMIN_CHAT);
     }
 
     /** Returns whether this player should receive mirrored messages into ADMIN chat. */
@@ -0,0 +1,97 @@
+package com.roften.multichat.chat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.TreeMap;
+
+/**
+ * Immutable, case-folding prefix trie of outgoing channel selectors
+ * ("$l", "#local ", "#лок ", "!" ...).
+ *
+ * <p>Compiled once at config load (see {@link ChatChannel#compileAliases}); matching walks only
+ * the first few characters of the raw message and folds case per character, so no lowercase
+ * copy of the whole message is made. The longest matching selector wins.</p>
+ */
+public final class ChannelPrefixTrie {
+    /** A selector: the matched text, the channel, and whether one optional space after it is eaten. */
+    public record Alias(String prefix, ChatChannel channel, boolean stripOneSpace) {}
+
+    /** Result of {@link #match}: selector length in the raw text plus the alias. */
+    public record Match(int length, Alias alias) {}
+
+    private final char[][] keys;
+    private final int[][] next;
+    private final Alias[] terminal;
+
+    private ChannelPrefixTrie(char[][] keys, int[][] next, Alias[] terminal) {
+        this.keys = keys;
+        this.next = next;
+        this.terminal = terminal;
+    }
+
+    public static ChannelPrefixTrie compile(List<Alias> aliases) {
+        List<TreeMap<Character, Integer>> nodes = new ArrayList<>();
+        List<Alias> term = new ArrayList<>();
+        nodes.add(new TreeMap<>());
+        term.add(null);
+
+        for (Alias a : aliases) {
+            if (a == null || a.prefix() == null || a.prefix().isEmpty() || a.channel() == null) continue;
+            String p = a.prefix().toLowerCase(Locale.ROOT);
+            int node = 0;
+            for (int i = 0; i < p.length(); i++) {
+                char c = p.charAt(i);
+                Integer nx = nodes.get(node).get(c);
+                if (nx == null) {
+                    nx = nodes.size();
+                    nodes.add(new TreeMap<>());
+                    term.add(null);
+                    nodes.get(node).put(c, nx);
+                }
+                node = nx;
+            }
+            // First definition wins, like the old "first channel in enum order" scan.
+            if (term.get(node) == null) term.set(node, a);
+        }
+
+        int n = nodes.size();
+        char[][] keys = new char[n][];
+        int[][] next = new int[n][];
+        for (int i = 0; i < n; i++) {
+            var m = nodes.get(i);
+            keys[i] = new char[m.size()];
+            next[i] = new int[m.size()];
+            int k = 0;
+            for (var e : m.entrySet()) {
+                keys[i][k] = e.getKey();
+                next[i][k] = e.getValue();
+                k++;
+            }
+        }
+        return new ChannelPrefixTrie(keys, next, term.toArray(new Alias[0]));
+    }
+
+    /**
+     * Longest selector at the start of {@code raw}, or null.
+     */
+    public Match match(String raw) {
+        if (raw == null) return null;
+        int node = 0;
+        int bestNode = -1;
+        int bestLen = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char[] k = keys[node];
+            if (k.length == 0) break;
+            int idx = Arrays.binarySearch(k, Character.toLowerCase(raw.charAt(i)));
+            if (idx < 0) break;
+            node = next[node][idx];
+            if (terminal[node] != null) {
+                bestNode = node;
+                bestLen = i + 1;
+            }
+        }
+        return bestNode < 0 ? null : new Match(bestLen, terminal[bestNode]);
+    }
+}
@@ -4,31 +4,40 @@ import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 
-import java.util.Locale;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public enum ChatChannel {
     GLOBAL("G", "avilixchat.tab.global", ChatFormatting.GRAY,
-            new String[]{"#g ", "#global ", "#г ", "#глоб "}),
+            List.of("#g ", "#global ", "#г ", "#глоб "), List.of("g", "г")),
     LOCAL("L", "avilixchat.tab.local", ChatFormatting.GREEN,
-            new String[]{"#l ", "#local ", "#лок ", "#локал "}),
+            List.of("#l ", "#local ", "#лок ", "#локал "), List.of("l", "л")),
     TRADE("T", "avilixchat.tab.trade", ChatFormatting.GOLD,
-            new String[]{"#t ", "#trade ", "#тр ", "#торг "}),
+            List.of("#t ", "#trade ", "#тр ", "#торг "), List.of("t", "т")),
     CLAN("C", "avilixchat.tab.clan", ChatFormatting.AQUA,
-            new String[]{"#c ", "#clan ", "#party ", "#к ", "#клан "}),
+            List.of("#c ", "#clan ", "#party ", "#к ", "#клан "), List.of("c", "к")),
     ADMIN("A", "avilixchat.tab.admin", ChatFormatting.RED,
-            new String[]{"#a ", "#admin ", "#адм ", "#админ "});
+            List.of("#a ", "#admin ", "#адм ", "#админ "), List.of("a", "а"));
 
     public final String shortTag;
     public final String tabKey;
     public final ChatFormatting color;
-    private final String[] inputPrefixes;
+    /** Built-in legacy prefixes (config defaults, see {@code MultiChatConfig.CHAT_ALIASES}). */
+    public final List<String> defaultPrefixes;
+    /** Built-in letters accepted after the switch key (config defaults, see {@code MultiChatConfig.SWITCH_LETTERS}). */
+    public final List<String> defaultSwitchLetters;
 
-    ChatChannel(String shortTag, String tabKey, ChatFormatting color, String[] inputPrefixes) {
+    /** Compiled selector trie; replaced on config load/reload. */
+    private static volatile ChannelPrefixTrie selectors;
+
+    ChatChannel(String shortTag, String tabKey, ChatFormatting color, List<String> defaultPrefixes, List<String> defaultSwitchLetters) {
         this.shortTag = shortTag;
         this.tabKey = tabKey;
         this.color = color;
-        this.inputPrefixes = inputPrefixes;
+        this.defaultPrefixes = defaultPrefixes;
+        this.defaultSwitchLetters = defaultSwitchLetters;
     }
 
     public Component tabTitle() {
@@ -48,54 +57,82 @@ public enum ChatChannel {
     /**
      * Parses a raw typed message like "#l hello" into (channel, "hello").
      * If no prefix is detected, GLOBAL is assumed.
+     *
+     * <p>Selectors are matched by a single pass over the first characters of the message
+     * through the compiled {@link ChannelPrefixTrie} (longest selector wins).</p>
      */
     public static ParseResult parseOutgoing(String raw) {
+        return parseOutgoing(raw, null);
+    }
+
+    /**
+     * Like {@link #parseOutgoing(String)} with a specific selector table (the client uses the one
+     * synced from the server); null uses the installed one.
+     */
+    public static ParseResult parseOutgoing(String raw, ChannelPrefixTrie trie) {
         if (raw == null) return new ParseResult(GLOBAL, "");
 
-        // Aliases:
-        // "!" at the beginning forces GLOBAL (common across many chat systems).
-        // Example: "! hello" -> GLOBAL "hello".
-        if (!raw.isEmpty() && raw.charAt(0) == '!') {
-            String msg = raw.substring(1);
-            if (msg.startsWith(" ")) msg = msg.substring(1);
-            return new ParseResult(GLOBAL, msg);
+        if (trie == null) trie = selectors;
+        if (trie == null) {
+            // Config not loaded yet (early client init): use built-in aliases.
+            trie = compileAliases("$", null, null);
         }
 
-        String trimmed = raw;
-
-        // Preferred: configurable switch key (default '$'): "$g hello", "$l hello", "$t hello", "$c hello", "$a hello"
-        String key = com.roften.multichat.MultiChatConfig.UI_CHAT_SWITCH_KEY.get();
-        if (key != null && !key.isEmpty() && raw.startsWith(key) && raw.length() > key.length()) {
-            String rest = raw.substring(key.length());
-            if (!rest.isEmpty()) {
-                char c = Character.toLowerCase(rest.charAt(0));
-                ChatChannel ch = switch (c) {
-                    case 'g', 'г' -> GLOBAL;
-                    case 'l', 'л' -> LOCAL;
-                    case 't', 'т' -> TRADE;
-                    case 'c', 'к' -> CLAN;
-                    case 'a', 'а' -> ADMIN;
-                    default -> null;
-                };
-                if (ch != null) {
-                    String msg = rest.substring(1);
-                    if (msg.startsWith(" ")) msg = msg.substring(1);
-                    return new ParseResult(ch, msg);
+        ChannelPrefixTrie.Match m = trie.match(raw);
+        if (m == null) return new ParseResult(GLOBAL, raw);
+
+        int end = m.length();
+        if (m.alias().stripOneSpace() && end < raw.length() && raw.charAt(end) == ' ') end++;
+        return new ParseResult(m.alias().channel(), raw.substring(end));
+    }
+
+    /**
+     * Compiles and installs the selector trie.
+     *
+     * <ul>
+     *   <li>"!" at the beginning forces GLOBAL (common across many chat systems): "! hello".</li>
+     *   <li>Configurable switch key (default '$') + channel letter: "$g hello", "$l hello", "$т привет".</li>
+     *   <li>Backward compatible legacy prefixes: "#g ", "#local ", "#лок ", ...</li>
+     * </ul>
+     *
+     * @param prefixes per-channel legacy prefixes; null (or a missing channel) uses the built-in defaults
+     * @param letters  per-channel switch-key letters; null (or a missing channel) uses the built-in defaults
+     */
+    public static ChannelPrefixTrie compileAliases(String switchKey,
+                                                   Map<ChatChannel, ? extends List<? extends String>> prefixes,
+                                                   Map<ChatChannel, ? extends List<? extends String>> letters) {
+        ChannelPrefixTrie trie = buildAliases(switchKey, prefixes, letters);
+        selectors = trie;
+        return trie;
+    }
+
+    /** Same as {@link #compileAliases} without installing the result. */
+    public static ChannelPrefixTrie buildAliases(String switchKey,
+                                                 Map<ChatChannel, ? extends List<? extends String>> prefixes,
+                                                 Map<ChatChannel, ? extends List<? extends String>> letters) {
+        List<ChannelPrefixTrie.Alias> aliases = new ArrayList<>();
+        aliases.add(new ChannelPrefixTrie.Alias("!", GLOBAL, true));
+
+        for (ChatChannel ch : values()) {
+            List<? extends String> ls = letters == null ? null : letters.get(ch);
+            if (ls == null) ls = ch.defaultSwitchLetters;
+            if (switchKey != null && !switchKey.isEmpty()) {
+                for (String l : ls) {
+                    if (l == null || l.isEmpty()) continue;
+                    aliases.add(new ChannelPrefixTrie.Alias(switchKey + l, ch, true));
                 }
             }
         }
-
-        // Backward compatible legacy prefixes (old '#g ', '#local ', etc.)
-        String lower = raw.toLowerCase(Locale.ROOT);
         for (ChatChannel ch : values()) {
-            for (String p : ch.inputPrefixes) {
-                if (lower.startsWith(p)) {
-                    trimmed = raw.substring(p.length());
-                    return new ParseResult(ch, trimmed);
-                }
+            List<? extends String> ps = prefixes == null ? null : prefixes.get(ch);
+            if (ps == null) ps = ch.defaultPrefixes;
+            for (String p : ps) {
+                if (p == null || p.isEmpty()) continue;
+                aliases.add(new ChannelPrefixTrie.Alias(p, ch, false));
             }
         }
-        return new ParseResult(GLOBAL, raw);
+
+        return ChannelPrefixTrie.compile(aliases);
     }
 
     /**
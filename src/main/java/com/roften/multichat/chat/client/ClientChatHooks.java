@@ -2,6 +2,7 @@ package com.roften.multichat.chat.client;
 
 import com.roften.multichat.MultiChatMod;
 import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.client.ui.ClientUiConfig;
 import net.minecraft.ChatFormatting;
 import net.minecraft.client.Minecraft;
 import net.minecraft.network.chat.Component;
@@ -10,6 +11,7 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.neoforge.client.event.ClientChatEvent;
 import net.neoforged.neoforge.client.event.ClientChatReceivedEvent;
+import net.neoforged.neoforge.client.event.ClientPlayerNetworkEvent;
 
 import java.util.Locale;
 
@@ -42,7 +44,8 @@ public final class ClientChatHooks {
         // Do NOT treat any '#' prefix as "channel selection".
         // Players can start messages with HEX colors: "#RRGGBB ...".
         // We only skip when the message already contains our explicit channel selector.
-        ChatChannel.ParseResult parsed = ChatChannel.parseOutgoing(out);
+        // Server's selector table (synced on login), so aliases defined only there count as explicit.
+        ChatChannel.ParseResult parsed = ChatChannel.parseOutgoing(out, ClientUiConfig.selectors());
 
         boolean hasExplicitChannelPrefix = parsed.channel() != ChatChannel.GLOBAL && !parsed.message().equals(out);
 
@@ -85,6 +88,14 @@ public final class ClientChatHooks {
 
     // (command sending helper removed)
 
+    @SubscribeEvent
+    public static void onLoggingIn(ClientPlayerNetworkEvent.LoggingIn event) {
+        // Server history backfill arrives a few ticks after this.
+        ClientChatState.onJoin();
+        ClientChatLines.reset();
+        ClientUiConfig.clearServerSelectors();
+    }
+
     @SubscribeEvent
     public static void onChatReceived(ClientChatReceivedEvent event) {
         // Routing/filtering is handled in ChatComponentMixin at the final addMessage(...) stage.
@@ -0,0 +1,94 @@
+package com.roften.multichat.chat.client;
+
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.network.ChatLinePacket;
+import net.minecraft.ChatFormatting;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Client side of structured chat lines: header layouts received once per session (or when the
+ * sender's prefix/name changes) and the lines that fill them.
+ *
+ * <p>A rebuilt line is handed to the chat listener exactly like the system message a vanilla client
+ * would get, so tab routing, chat mods and logging see no difference. Client thread only.</p>
+ */
+public final class ClientChatLines {
+    private ClientChatLines() {}
+
+    /** Larger than the server's per-recipient set, so every id the server assumes known is still here. */
+    private static final int MAX_HEADERS = 1024;
+
+    private record Header(Component layout, DateTimeFormatter time, ZoneId zone) {}
+
+    private static final LinkedHashMap<Integer, Header> HEADERS = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Header> eldest) {
+            return size() > MAX_HEADERS;
+        }
+    };
+
+    /** New connection: ids are per session. */
+    public static void reset() {
+        HEADERS.clear();
+    }
+
+    public static void define(int id, Component layout, String timePattern, String zone) {
+        DateTimeFormatter fmt;
+        try {
+            fmt = DateTimeFormatter.ofPattern(timePattern);
+            // Date/zone fields parse fine but cannot format the time of day shown in the line.
+            LocalTime.MIDNIGHT.format(fmt);
+        } catch (RuntimeException e) {
+            fmt = DateTimeFormatter.ofPattern("HH:mm");
+        }
+        ZoneId z;
+        try {
+            z = ZoneId.of(zone);
+        } catch (RuntimeException e) {
+            z = ZoneId.systemDefault();
+        }
+        HEADERS.put(id, new Header(layout, fmt, z));
+    }
+
+    public static void show(ChatChannel channel, int headerId, long tsMillis, Component message) {
+        Header h = HEADERS.get(headerId);
+        Component line;
+        if (h == null) {
+            // Should not happen; keep the line routable at least.
+            MultiChatMod.LOGGER.debug("Unknown chat header {}", headerId);
+            line = Component.empty().append(channel.channelBadge()).append(message);
+        } else {
+            line = fill(h, tsMillis, message);
+        }
+
+        Minecraft mc = Minecraft.getInstance();
+        mc.getChatListener().handleSystemMessage(line, false);
+    }
+
+    /** Same tree the server would have sent: the layout's top-level parts with the slots replaced. */
+    private static Component fill(Header h, long tsMillis, Component message) {
+        MutableComponent out = h.layout().plainCopy().withStyle(h.layout().getStyle());
+        for (Component part : h.layout().getSiblings()) {
+            String slot = part.getStyle().getInsertion();
+            if (ChatLinePacket.TIME_SLOT.equals(slot)) {
+                String ts = "[" + Instant.ofEpochMilli(tsMillis).atZone(h.zone()).toLocalTime().format(h.time()) + "]";
+                out.append(Component.literal(ts).withStyle(ChatFormatting.DARK_GRAY));
+            } else if (ChatLinePacket.MESSAGE_SLOT.equals(slot)) {
+                out.append(message);
+            } else {
+                out.append(part);
+            }
+        }
+        return out;
+    }
+}
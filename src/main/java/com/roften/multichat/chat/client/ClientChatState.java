@@ -12,9 +12,15 @@ import net.neoforged.neoforge.network.PacketDistributor;
 import com.roften.multichat.client.ui.MergedTabsState;
 
 import com.roften.multichat.network.ActiveChannelPacket;
+import com.roften.multichat.network.HistoryBackfillPacket;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Client-side filtered chat view with per-tab unread markers.
@@ -33,11 +39,28 @@ public final class ClientChatState {
      * we re-add messages with the same metadata. This is critical for compatibility with mods
      * like ChatHeads and for click actions that depend on the original trust context.
      */
-    private record Entry(Kind kind, ChatChannel channel, Component msg, MessageSignature signature, GuiMessageTag tag) {}
+    private record Entry(long seq, Kind kind, ChatChannel channel, Component msg, MessageSignature signature, GuiMessageTag tag) {}
 
-    /** Chronological combined history (channel + system + private). */
+    /** Chronological combined history (channel + system + private); decides eviction. */
     private static final ArrayDeque<Entry> all = new ArrayDeque<>();
 
+    /**
+     * The same entries split by where they show, each in {@link Entry#seq} order, so a rebuild only
+     * visits what the view shows and merges the few lists it needs.
+     */
+    private static final EnumMap<ChatChannel, ArrayDeque<Entry>> byChannel = new EnumMap<>(ChatChannel.class);
+    private static final ArrayDeque<Entry> system = new ArrayDeque<>();
+    private static final ArrayDeque<Entry> privates = new ArrayDeque<>();
+
+    /** Next {@link Entry#seq}; entries are numbered in {@link #all} order. */
+    private static long nextSeq;
+
+    /**
+     * Position in {@link #all} where server history backfill goes: after what was there when this
+     * session started (and after earlier backfill chunks), before anything received live since.
+     */
+    private static int backfillAt;
+
     /** Guard: while rebuilding we must NOT re-store/re-filter our own re-added messages. */
     private static final ThreadLocal<Boolean> REBUILDING = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
@@ -45,7 +68,10 @@ public final class ClientChatState {
     private static final EnumMap<ChatChannel, Integer> unread = new EnumMap<>(ChatChannel.class);
 
     static {
-        for (ChatChannel ch : ChatChannel.values()) unread.put(ch, 0);
+        for (ChatChannel ch : ChatChannel.values()) {
+            unread.put(ch, 0);
+            byChannel.put(ch, new ArrayDeque<>());
+        }
     }
 
     private ClientChatState() {}
@@ -103,7 +129,7 @@ public final class ClientChatState {
     }
 
     public static void rememberSystem(Component msg, MessageSignature signature, GuiMessageTag tag) {
-        push(new Entry(Kind.SYSTEM, null, msg, signature, tag));
+        push(Kind.SYSTEM, null, msg, signature, tag);
 
         // If system messages are NOT shown in all tabs, they effectively belong to GLOBAL.
         if (!MultiChatConfig.SHOW_SYSTEM_IN_ALL_TABS.getAsBoolean()) {
@@ -118,7 +144,7 @@ public final class ClientChatState {
     }
 
     public static void rememberPrivate(Component msg, MessageSignature signature, GuiMessageTag tag) {
-        push(new Entry(Kind.PRIVATE, null, msg, signature, tag));
+        push(Kind.PRIVATE, null, msg, signature, tag);
         // Private messages show everywhere -> no unread markers.
     }
 
@@ -131,19 +157,70 @@ public final class ClientChatState {
             rememberSystem(msg, signature, tag);
             return;
         }
-        push(new Entry(Kind.CHANNEL, channel, msg, signature, tag));
+        push(Kind.CHANNEL, channel, msg, signature, tag);
 
         if (current != channel) {
             incUnread(channel);
         }
     }
 
-    private static void push(Entry e) {
-        if (e == null || e.msg == null) return;
+    private static void push(Kind kind, ChatChannel channel, Component msg, MessageSignature signature, GuiMessageTag tag) {
+        if (msg == null) return;
+        Entry e = new Entry(nextSeq++, kind, channel, msg, signature, tag);
         all.addLast(e);
+        listOf(e).addLast(e);
+        trim();
+    }
+
+    private static ArrayDeque<Entry> listOf(Entry e) {
+        return switch (e.kind) {
+            case CHANNEL -> byChannel.get(e.channel);
+            case SYSTEM -> system;
+            case PRIVATE -> privates;
+        };
+    }
+
+    private static void trim() {
         while (all.size() > MAX_ALL) {
-            all.removeFirst();
+            // The globally oldest entry is also the oldest of its own list.
+            Entry e = all.removeFirst();
+            listOf(e).pollFirst();
+            if (backfillAt > 0) backfillAt--;
+        }
+    }
+
+    /** New connection: history backfill from this server goes after everything stored so far. */
+    public static void onJoin() {
+        backfillAt = all.size();
+        TabLineCache.clear();
+    }
+
+    /**
+     * Inserts a chunk of server history (oldest first) before messages received live since joining.
+     * History is old news: no unread markers.
+     */
+    public static void backfill(List<HistoryBackfillPacket.Line> lines) {
+        if (lines == null || lines.isEmpty()) return;
+
+        List<Entry> entries = new ArrayList<>(all);
+        int at = Math.min(backfillAt, entries.size());
+        List<Entry> chunk = new ArrayList<>(lines.size());
+        for (HistoryBackfillPacket.Line l : lines) {
+            if (l.msg() != null) chunk.add(new Entry(0, Kind.CHANNEL, l.channel(), l.msg(), null, null));
         }
+        entries.addAll(at, chunk);
+
+        // Inserted in the middle: renumber and re-index (a few times per join); kept tab lines are stale.
+        TabLineCache.clear();
+        all.clear();
+        system.clear();
+        privates.clear();
+        for (ArrayDeque<Entry> q : byChannel.values()) q.clear();
+        nextSeq = 0;
+        for (Entry e : entries) push(e.kind, e.channel, e.msg, e.signature, e.tag);
+        int evicted = entries.size() - all.size();
+        backfillAt = Math.max(0, at + chunk.size() - evicted);
+        rebuildChat();
     }
 
     public static boolean isRebuilding() {
@@ -158,19 +235,9 @@ public final class ClientChatState {
         try {
 
         Object chat = mc.gui.getChat();
-        try {
-            // IMPORTANT: must fully clear the chat component before rebuilding,
-            // otherwise lines remain and we append duplicates on every tab switch.
-            chat.getClass().getMethod("clearMessages", boolean.class).invoke(chat, true);
-        } catch (Throwable ignored) {
-            try {
-                chat.getClass().getMethod("clearMessages").invoke(chat);
-            } catch (Throwable ignored2) {
-                // Worst case: duplicates until relog.
-            }
-        }
 
         final boolean showSystemInAll = MultiChatConfig.SHOW_SYSTEM_IN_ALL_TABS.getAsBoolean();
+        final boolean showSystem = showSystemInAll || current == ChatChannel.GLOBAL || current == ChatChannel.ADMIN;
         final boolean mergedView = MergedTabsState.isActive() && MergedTabsState.contains(current);
         if (mergedView) {
             // When the merged view is visible, consider those channels "read".
@@ -179,6 +246,24 @@ public final class ClientChatState {
             }
         }
 
+        // Swap in the target view's kept lines; then only what arrived while it was hidden is added.
+        TabLineCache.View view = new TabLineCache.View(mergedView ? null : current,
+                mergedView ? MergedTabsState.snapshot() : Set.of(), showSystem);
+        final long after = TabLineCache.swap(mc.gui.getChat(), view, nextSeq - 1);
+        if (after < 0) {
+            try {
+                // IMPORTANT: must fully clear the chat component before rebuilding,
+                // otherwise lines remain and we append duplicates on every tab switch.
+                chat.getClass().getMethod("clearMessages", boolean.class).invoke(chat, true);
+            } catch (Throwable ignored) {
+                try {
+                    chat.getClass().getMethod("clearMessages").invoke(chat);
+                } catch (Throwable ignored2) {
+                    // Worst case: duplicates until relog.
+                }
+            }
+        }
+
         // Prefer the 3-arg addMessage method when available.
         // (Component, MessageSignature, GuiMessageTag)
         java.lang.reflect.Method add3 = null;
@@ -187,28 +272,20 @@ public final class ClientChatState {
         } catch (Throwable ignored) {
         }
 
-        for (Entry e : all) {
-            if (e.msg == null) continue;
+        // Lists this view shows: private always, system by config/tab, then the channel(s).
+        List<ArrayDeque<Entry>> lists = new ArrayList<>(ChatChannel.values().length + 2);
+        lists.add(privates);
+        if (showSystem) {
+            lists.add(system);
+        }
+        if (mergedView) {
+            for (ChatChannel ch : MergedTabsState.snapshot()) lists.add(byChannel.get(ch));
+        } else {
+            lists.add(byChannel.get(current));
+        }
 
-            switch (e.kind) {
-                case PRIVATE -> addMessage(chat, add3, e);
-                case SYSTEM -> {
-                    if (showSystemInAll || current == ChatChannel.GLOBAL || current == ChatChannel.ADMIN) {
-                        addMessage(chat, add3, e);
-                    }
-                }
-                case CHANNEL -> {
-                    if (mergedView) {
-                        if (e.channel != null && MergedTabsState.contains(e.channel)) {
-                            addMessage(chat, add3, e);
-                        }
-                    } else {
-                        if (e.channel == current) {
-                            addMessage(chat, add3, e);
-                        }
-                    }
-                }
-            }
+        for (Entry e : merge(lists, after)) {
+            addMessage(chat, add3, e);
         }
 
         } finally {
@@ -216,6 +293,49 @@ public final class ClientChatState {
         }
     }
 
+    /**
+     * k-way merge of seq-ordered lists (k is at most the channel count + 2, so a linear pick is enough).
+     *
+     * @param after only entries with a greater seq; -1 for all
+     */
+    private static List<Entry> merge(List<ArrayDeque<Entry>> lists, long after) {
+        int k = lists.size();
+        @SuppressWarnings("unchecked")
+        Iterator<Entry>[] its = new Iterator[k];
+        Entry[] heads = new Entry[k];
+        int total = 0;
+        for (int i = 0; i < k; i++) {
+            ArrayDeque<Entry> q = lists.get(i);
+            if (after < 0) {
+                its[i] = q.iterator();
+                total += q.size();
+            } else {
+                // New entries are at the tail: walk back to the cut, no full scan.
+                ArrayList<Entry> tail = new ArrayList<>();
+                for (Iterator<Entry> d = q.descendingIterator(); d.hasNext(); ) {
+                    Entry e = d.next();
+                    if (e.seq <= after) break;
+                    tail.add(e);
+                }
+                Collections.reverse(tail);
+                its[i] = tail.iterator();
+                total += tail.size();
+            }
+            heads[i] = its[i].hasNext() ? its[i].next() : null;
+        }
+
+        List<Entry> out = new ArrayList<>(total);
+        while (true) {
+            int min = -1;
+            for (int i = 0; i < k; i++) {
+                if (heads[i] != null && (min < 0 || heads[i].seq < heads[min].seq)) min = i;
+            }
+            if (min < 0) return out;
+            out.add(heads[min]);
+            heads[min] = its[min].hasNext() ? its[min].next() : null;
+        }
+    }
+
     private static void addMessage(Object chat, java.lang.reflect.Method add3, Entry e) {
         if (chat == null || e == null || e.msg == null) return;
 
@@ -0,0 +1,88 @@
+package com.roften.multichat.chat.client;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.mixin.ChatComponentAccessor;
+import net.minecraft.client.GuiMessage;
+import net.minecraft.client.gui.components.ChatComponent;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Client-only: each chat view keeps its own already wrapped {@link GuiMessage.Line} list.
+ *
+ * <p>On tab switch the chat's message lists are swapped for the target view's lists instead of
+ * clearing the chat and re-adding every stored message; only messages that arrived for that view
+ * while it was hidden are added on top. A view is rebuilt in full the first time it is shown, after
+ * the chat width/scale changed, or after history was renumbered (join backfill).</p>
+ *
+ * <p>Off with {@code ui.tabLineCache=false}: every switch re-adds all lines through the chat listener,
+ * as before.</p>
+ */
+final class TabLineCache {
+    private TabLineCache() {}
+
+    /** What a view shows; equal views share one buffer. */
+    record View(ChatChannel channel, Set<ChatChannel> merged, boolean system) {}
+
+    /** A hidden view's lists and the last entry seq they contain. */
+    private record Buffer(List<GuiMessage> messages, List<GuiMessage.Line> lines, long lastSeq, int width, double scale) {}
+
+    private static final Map<View, Buffer> BUFFERS = new HashMap<>();
+    /** View whose lists the chat component currently holds; null if unknown. */
+    private static View displayed;
+
+    /** Forget all buffers (new session, history renumbered); the next switch rebuilds in full. */
+    static void clear() {
+        BUFFERS.clear();
+        displayed = null;
+    }
+
+    /**
+     * Puts {@code target}'s lists into the chat, keeping the outgoing view's lists for later.
+     *
+     * @param lastSeq seq of the newest stored entry (everything up to it is in the displayed view)
+     * @return replay entries with a greater seq; -1 = clear the chat and replay the whole view
+     */
+    static long swap(ChatComponent chat, View target, long lastSeq) {
+        if (!MultiChatConfig.UI_TAB_LINE_CACHE.getAsBoolean()) {
+            clear();
+            return -1;
+        }
+        if (target.equals(displayed)) {
+            // Same view rebuilt (e.g. history inserted): nothing to swap.
+            BUFFERS.remove(target);
+            return -1;
+        }
+
+        try {
+            ChatComponentAccessor acc = (ChatComponentAccessor) chat;
+            if (displayed != null) {
+                BUFFERS.put(displayed, new Buffer(acc.multichat$getAllMessages(), acc.multichat$getTrimmedMessages(),
+                        lastSeq, chat.getWidth(), chat.getScale()));
+            }
+            displayed = target;
+
+            Buffer b = BUFFERS.remove(target);
+            if (b != null && b.width() == chat.getWidth() && b.scale() == chat.getScale()) {
+                acc.multichat$setAllMessages(b.messages());
+                acc.multichat$setTrimmedMessages(b.lines());
+                chat.resetChatScroll();
+                return b.lastSeq();
+            }
+
+            // First visit or stale layout: fresh lists, so clearing cannot touch a kept buffer.
+            acc.multichat$setAllMessages(new ArrayList<>());
+            acc.multichat$setTrimmedMessages(new ArrayList<>());
+            return -1;
+        } catch (Throwable t) {
+            // Accessor mixin not applied: behave as with the cache off.
+            clear();
+            return -1;
+        }
+    }
+}
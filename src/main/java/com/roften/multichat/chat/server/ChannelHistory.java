@@ -0,0 +1,199 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.compat.OpenPacCompat;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.scores.PlayerTeam;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recent routed messages of every channel, kept in memory so join backfill and moderator context views
+ * do not have to query the chat log database.
+ *
+ * <p>One bounded ring per channel; CLAN has one ring per party (OPaC) or scoreboard team, so a player
+ * only ever gets their own party's history. Depths come from {@code channelHistory.*} and are applied on
+ * config load. Only the raw text is stored; lines are rendered when read. Fed and read on the server
+ * thread; methods synchronize anyway since they are cheap.</p>
+ */
+public final class ChannelHistory {
+    private ChannelHistory() {}
+
+    /** A stored message; {@link #render()} builds the chat line as recipients saw it. */
+    public record Entry(long tsMillis, ChatChannel channel, UUID sender, String senderName, String text) {
+        public Component render() {
+            return RoutedMessage.renderStored(channel, tsMillis, sender, senderName, text);
+        }
+    }
+
+    private static final Map<ChatChannel, Integer> DEPTHS = new EnumMap<>(ChatChannel.class);
+    private static final Map<ChatChannel, Ring> RINGS = new EnumMap<>(ChatChannel.class);
+    private static int maxClanGroups = 256;
+
+    /**
+     * CLAN rings by party/team key, least recently written first (a write moves its group to the end;
+     * reads don't reorder); the first groups are dropped beyond {@link #maxClanGroups}.
+     */
+    private static final LinkedHashMap<String, Ring> CLAN = new LinkedHashMap<>(64, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Ring> eldest) {
+            return size() > maxClanGroups;
+        }
+    };
+
+    /**
+     * Applies new depths (config load/reload). Rings keep their newest messages that still fit;
+     * a depth of 0 disables history for the channel.
+     */
+    public static synchronized void configure(Map<ChatChannel, Integer> depths, int clanGroups) {
+        maxClanGroups = Math.max(1, clanGroups);
+        for (ChatChannel ch : ChatChannel.values()) {
+            int depth = Math.max(0, depths.getOrDefault(ch, 0));
+            DEPTHS.put(ch, depth);
+            if (ch == ChatChannel.CLAN) {
+                if (depth == 0) CLAN.clear();
+                else CLAN.replaceAll((k, r) -> r.resized(depth));
+                continue;
+            }
+            Ring r = RINGS.get(ch);
+            if (depth == 0) RINGS.remove(ch);
+            else RINGS.put(ch, r == null ? new Ring(depth) : r.resized(depth));
+        }
+        while (CLAN.size() > maxClanGroups) {
+            CLAN.remove(CLAN.keySet().iterator().next());
+        }
+    }
+
+    public static synchronized void clear() {
+        for (ChatChannel ch : RINGS.keySet()) RINGS.put(ch, new Ring(RINGS.get(ch).capacity()));
+        CLAN.clear();
+    }
+
+    /** Records a message that was just routed. */
+    public static void record(ChatChannel channel, ServerPlayer sender, String text) {
+        if (channel == null || sender == null || text == null) return;
+        // Resolved outside the lock: may ask OPaC.
+        String clanKey = channel == ChatChannel.CLAN ? clanKey(sender) : null;
+        record(channel, clanKey, System.currentTimeMillis(), sender.getUUID(), sender.getGameProfile().getName(), text);
+    }
+
+    private static synchronized void record(ChatChannel channel, String clanKey, long ts, UUID sender, String name, String text) {
+        Ring r;
+        if (channel == ChatChannel.CLAN) {
+            int depth = DEPTHS.getOrDefault(ChatChannel.CLAN, 0);
+            if (depth == 0) return;
+            r = CLAN.remove(clanKey);
+            if (r == null) r = new Ring(depth);
+            CLAN.put(clanKey, r);
+        } else {
+            r = RINGS.get(channel);
+            if (r == null) return;
+        }
+        r.add(ts, sender, name, text);
+    }
+
+    /**
+     * Newest {@code max} messages of a channel, oldest first.
+     *
+     * @param clanKey party/team key for CLAN (see {@link #clanKey}); ignored for other channels
+     */
+    public static synchronized List<Entry> recent(ChatChannel channel, String clanKey, int max) {
+        Ring r = channel == ChatChannel.CLAN ? (clanKey == null ? null : CLAN.get(clanKey)) : RINGS.get(channel);
+        return r == null ? List.of() : r.newest(channel, max);
+    }
+
+    /** One ring's content, for persistence ({@link HistorySnapshot}); clanKey is null except for CLAN. */
+    record Group(ChatChannel channel, String clanKey, List<Entry> entries) {}
+
+    /** Everything in memory, each group oldest first. */
+    static synchronized List<Group> export() {
+        List<Group> out = new ArrayList<>();
+        for (Map.Entry<ChatChannel, Ring> e : RINGS.entrySet()) {
+            out.add(new Group(e.getKey(), null, e.getValue().newest(e.getKey(), Integer.MAX_VALUE)));
+        }
+        for (Map.Entry<String, Ring> e : CLAN.entrySet()) {
+            out.add(new Group(ChatChannel.CLAN, e.getKey(), e.getValue().newest(ChatChannel.CLAN, Integer.MAX_VALUE)));
+        }
+        return out;
+    }
+
+    /** Puts persisted messages back (server start, before anyone chats); respects the configured depths. */
+    static void restore(Group group) {
+        for (Entry e : group.entries()) {
+            if (e.sender() == null) continue;
+            record(group.channel(), group.clanKey(), e.tsMillis(), e.sender(), e.senderName(), e.text());
+        }
+    }
+
+    /**
+     * Key of the group whose CLAN history the player shares: OPaC party, else scoreboard team,
+     * else the player alone.
+     */
+    public static String clanKey(ServerPlayer player) {
+        String party = OpenPacCompat.partyKey(player);
+        if (party != null) return party;
+        PlayerTeam team = player.getTeam();
+        if (team != null) return "team:" + team.getName();
+        return "solo:" + player.getUUID();
+    }
+
+    /** Parallel-array ring of (time, sender, name, text). */
+    private static final class Ring {
+        private final long[] ts;
+        private final long[] senderMost;
+        private final long[] senderLeast;
+        private final String[] names;
+        private final String[] texts;
+        /** Total messages ever added; slot of message n is n % capacity. */
+        private long count;
+
+        Ring(int capacity) {
+            ts = new long[capacity];
+            senderMost = new long[capacity];
+            senderLeast = new long[capacity];
+            names = new String[capacity];
+            texts = new String[capacity];
+        }
+
+        int capacity() {
+            return ts.length;
+        }
+
+        void add(long time, UUID sender, String name, String text) {
+            int i = (int) (count % ts.length);
+            ts[i] = time;
+            senderMost[i] = sender.getMostSignificantBits();
+            senderLeast[i] = sender.getLeastSignificantBits();
+            names[i] = name;
+            texts[i] = text;
+            count++;
+        }
+
+        List<Entry> newest(ChatChannel channel, int max) {
+            long from = Math.max(Math.max(0, count - ts.length), count - Math.max(0, max));
+            List<Entry> out = new ArrayList<>((int) (count - from));
+            for (long n = from; n < count; n++) {
+                int i = (int) (n % ts.length);
+                out.add(new Entry(ts[i], channel, new UUID(senderMost[i], senderLeast[i]), names[i], texts[i]));
+            }
+            return out;
+        }
+
+        Ring resized(int capacity) {
+            if (capacity == ts.length) return this;
+            Ring r = new Ring(capacity);
+            long from = Math.max(Math.max(0, count - ts.length), count - capacity);
+            for (long n = from; n < count; n++) {
+                int i = (int) (n % ts.length);
+                r.add(ts[i], new UUID(senderMost[i], senderLeast[i]), names[i], texts[i]);
+            }
+            return r;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.compat.LegacyComponentParser;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A chat line layout like {@code {time}{badge}{prefix}{name}: {message}}, compiled once at config load.
+ *
+ * <p>Literal text between slots is parsed once (legacy {@code &}-codes allowed, default color GRAY)
+ * and kept as shared, never-mutated components; rendering only fills the slots.</p>
+ *
+ * <p>Supported slots: {@code {time}}, {@code {badge}}, {@code {prefix}}, {@code {name}}, {@code {message}}.
+ * Unknown {@code {...}} tokens are kept as literal text.</p>
+ */
+public final class ChatFormatTemplate {
+    public enum Slot { TIME, BADGE, PREFIX, NAME, MESSAGE }
+
+    /** Each part is either a shared literal {@link Component} or a {@link Slot}. */
+    private final Object[] parts;
+    /** Same layout with literals pre-rendered monochrome for SPY copies. */
+    private final Object[] spyParts;
+
+    private ChatFormatTemplate(Object[] parts, Object[] spyParts) {
+        this.parts = parts;
+        this.spyParts = spyParts;
+    }
+
+    public static ChatFormatTemplate compile(String template) {
+        String t = template == null ? "" : template;
+        List<Object> out = new ArrayList<>();
+        StringBuilder lit = new StringBuilder();
+
+        int i = 0;
+        while (i < t.length()) {
+            char c = t.charAt(i);
+            if (c == '{') {
+                int close = t.indexOf('}', i + 1);
+                if (close > i) {
+                    Slot slot = slotOf(t.substring(i + 1, close));
+                    if (slot != null) {
+                        flushLiteral(lit, out);
+                        out.add(slot);
+                        i = close + 1;
+                        continue;
+                    }
+                }
+            }
+            lit.append(c);
+            i++;
+        }
+        flushLiteral(lit, out);
+
+        Object[] parts = out.toArray();
+        Object[] spy = new Object[parts.length];
+        for (int k = 0; k < parts.length; k++) {
+            spy[k] = parts[k] instanceof Component comp
+                    ? Component.literal(comp.getString()).withStyle(ChatFormatting.GRAY)
+                    : parts[k];
+        }
+        return new ChatFormatTemplate(parts, spy);
+    }
+
+    private static Slot slotOf(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "time" -> Slot.TIME;
+            case "badge", "channel" -> Slot.BADGE;
+            case "prefix" -> Slot.PREFIX;
+            case "name", "player" -> Slot.NAME;
+            case "message", "msg" -> Slot.MESSAGE;
+            default -> null;
+        };
+    }
+
+    private static void flushLiteral(StringBuilder lit, List<Object> out) {
+        if (lit.length() == 0) return;
+        out.add(Component.empty().withStyle(ChatFormatting.GRAY).append(LegacyComponentParser.parse(lit.toString())));
+        lit.setLength(0);
+    }
+
+    /**
+     * Fills the slots. Null slot values are skipped (e.g. no LuckPerms prefix).
+     *
+     * @param afterBadge optional component inserted right after the badge (the SPY marker);
+     *                   prepended when the template has no badge slot
+     */
+    public MutableComponent render(boolean spy, Component time, Component badge, Component prefix,
+                                   Component name, Component message, Component afterBadge) {
+        Object[] ps = spy ? spyParts : parts;
+        MutableComponent out = Component.empty();
+        boolean afterBadgeDone = afterBadge == null;
+        if (!afterBadgeDone && !hasBadge(ps)) {
+            out.append(afterBadge);
+            afterBadgeDone = true;
+        }
+        for (Object p : ps) {
+            if (p instanceof Slot s) {
+                Component v = switch (s) {
+                    case TIME -> time;
+                    case BADGE -> badge;
+                    case PREFIX -> prefix;
+                    case NAME -> name;
+                    case MESSAGE -> message;
+                };
+                if (v != null) out.append(v);
+                if (s == Slot.BADGE && !afterBadgeDone) {
+                    out.append(afterBadge);
+                    afterBadgeDone = true;
+                }
+            } else {
+                out.append((Component) p);
+            }
+        }
+        return out;
+    }
+
+    private static boolean hasBadge(Object[] ps) {
+        for (Object p : ps) if (p == Slot.BADGE) return true;
+        return false;
+    }
+}
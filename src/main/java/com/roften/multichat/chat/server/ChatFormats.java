@@ -0,0 +1,167 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.network.ChatHeaderPacket;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Compiled chat/death line formats and the shared, immutable pieces they are built from
+ * (channel badges, SPY marker, timestamps).
+ *
+ * <p>Rebuilt by {@link MultiChatConfig#onConfigLoad} on every config (re)load. Rendering a line only
+ * fills the per-message slots (prefix, name, message); everything else is reused.</p>
+ */
+public final class ChatFormats {
+    private ChatFormats() {}
+
+    /** Shown right after the badge in SPY copies: everything gray, only "SPY" is red. */
+    public static final Component SPY_MARK = Component.empty()
+            .append(Component.literal("[").withStyle(ChatFormatting.GRAY))
+            .append(Component.literal("SPY").withStyle(ChatFormatting.DARK_RED))
+            .append(Component.literal("] ").withStyle(ChatFormatting.GRAY));
+
+    private record Compiled(Map<ChatChannel, ChatFormatTemplate> chat,
+                            ChatFormatTemplate death,
+                            Map<ChatChannel, Component> badges,
+                            Map<ChatChannel, Component> spyBadges,
+                            TimestampCache chatTime,
+                            TimestampCache deathTime) {}
+
+    private static volatile Compiled compiled;
+
+    public static void compile() {
+        Map<ChatChannel, ChatFormatTemplate> chat = new EnumMap<>(ChatChannel.class);
+        Map<ChatChannel, Component> badges = new EnumMap<>(ChatChannel.class);
+        Map<ChatChannel, Component> spyBadges = new EnumMap<>(ChatChannel.class);
+        for (ChatChannel ch : ChatChannel.values()) {
+            chat.put(ch, ChatFormatTemplate.compile(MultiChatConfig.CHAT_FORMATS.get(ch).get()));
+
+            Component badge = ch.channelBadge();
+            badges.put(ch, badge);
+            // Same insertion token (client routing), monochrome for SPY copies.
+            spyBadges.put(ch, badge.copy().withStyle(s -> s.withColor(ChatFormatting.GRAY)));
+        }
+
+        compiled = new Compiled(chat,
+                ChatFormatTemplate.compile(MultiChatConfig.DEATH_FORMAT.get()),
+                badges,
+                spyBadges,
+                new TimestampCache(MultiChatConfig.CHAT_TIME_FORMAT.get(), "HH:mm"),
+                new TimestampCache(MultiChatConfig.DEATH_TIME_FORMAT.get(), "HH:mm:ss"));
+    }
+
+    private static Compiled get() {
+        Compiled c = compiled;
+        if (c == null) {
+            compile();
+            c = compiled;
+        }
+        return c;
+    }
+
+    public static ChatFormatTemplate chat(ChatChannel channel) {
+        return get().chat().get(channel);
+    }
+
+    public static Component badge(ChatChannel channel, boolean spy) {
+        Compiled c = get();
+        return (spy ? c.spyBadges() : c.badges()).get(channel);
+    }
+
+    /** "[HH:mm]" for chat lines; DARK_GRAY, or GRAY in SPY copies. */
+    public static Component chatTime(boolean spy) {
+        return get().chatTime().now(spy);
+    }
+
+    /** Like {@link #chatTime} for a past moment (history re-rendering); not cached. */
+    public static Component chatTimeAt(long epochMillis, boolean spy) {
+        return get().chatTime().at(epochMillis, spy);
+    }
+
+    /** Effective {@code chatTimeFormat} pattern (structured chat lines are timed on the client). */
+    public static String chatTimePattern() {
+        return get().chatTime().pattern;
+    }
+
+    /**
+     * Routed death line ("[HH:mm:ss] [L] message" by default). The vanilla death component is kept
+     * as-is so its inner styles (names, hover) survive.
+     */
+    public static MutableComponent deathLine(ChatChannel badgeChannel, Component deathMessage) {
+        Compiled c = get();
+        return c.death().render(false, c.deathTime().now(false), c.badges().get(badgeChannel), null, null, deathMessage, null);
+    }
+
+    /**
+     * Formats the current time once per minute/second (depending on the pattern) and hands out
+     * the same immutable component to every message in between.
+     */
+    static final class TimestampCache {
+        private record Entry(long bucket, Component normal, Component spy) {}
+
+        private final DateTimeFormatter fmt;
+        private final String pattern;
+        private final long bucketMillis;
+        private volatile Entry entry;
+
+        TimestampCache(String pattern, String fallback) {
+            DateTimeFormatter f;
+            String used = pattern;
+            try {
+                // Sent to structured-chat clients with every header.
+                if (pattern.length() > ChatHeaderPacket.MAX_PATTERN_LENGTH) throw new IllegalArgumentException("too long");
+                f = DateTimeFormatter.ofPattern(pattern);
+                // Date or zone fields ("dd.MM HH:mm") parse fine but cannot format a time of day.
+                LocalTime.of(12, 34, 56).format(f);
+            } catch (RuntimeException e) {
+                MultiChatMod.LOGGER.warn("Invalid time format '{}', using '{}'", pattern, fallback);
+                f = DateTimeFormatter.ofPattern(fallback);
+                used = fallback;
+            }
+            this.fmt = f;
+            this.pattern = used;
+            // Sub-second fields are not worth caching per millisecond; seconds vs. minutes is enough.
+            this.bucketMillis = showsSeconds(f) ? 1_000L : 60_000L;
+        }
+
+        /** Whether the output changes within a minute (asks the formatter, so quoted literals don't count). */
+        private static boolean showsSeconds(DateTimeFormatter f) {
+            LocalTime t = LocalTime.of(12, 34, 10);
+            return !t.format(f).equals(t.plusSeconds(1).format(f))
+                    || !t.format(f).equals(t.plusNanos(500_000_000L).format(f));
+        }
+
+        String pattern() {
+            return pattern;
+        }
+
+        Component now(boolean spy) {
+            long bucket = System.currentTimeMillis() / bucketMillis;
+            Entry e = entry;
+            if (e == null || e.bucket() != bucket) {
+                String ts = "[" + LocalTime.now().format(fmt) + "]";
+                e = new Entry(bucket,
+                        Component.literal(ts).withStyle(ChatFormatting.DARK_GRAY),
+                        Component.literal(ts).withStyle(ChatFormatting.GRAY));
+                entry = e;
+            }
+            return spy ? e.spy() : e.normal();
+        }
+
+        Component at(long epochMillis, boolean spy) {
+            String ts = "[" + Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()).toLocalTime().format(fmt) + "]";
+            return Component.literal(ts).withStyle(spy ? ChatFormatting.GRAY : ChatFormatting.DARK_GRAY);
+        }
+    }
+}
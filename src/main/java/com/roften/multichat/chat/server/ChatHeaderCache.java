@@ -0,0 +1,142 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.admin.AdminChatState;
+import com.roften.multichat.compat.LuckPermsCompat;
+import com.roften.multichat.moderation.Perms;
+import com.roften.multichat.spy.SpyState;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Per-player chat header pieces (LuckPerms prefix, colored name), built off the server thread.
+ *
+ * <p>Warmed on login together with the permission nodes chat routing asks for, so the first message
+ * never waits for LuckPerms to load user data or resolve contextual QueryOptions. Until the header is
+ * ready chat uses the plain name without prefix. Refreshed in the background when LuckPerms
+ * recalculates the user (or after a TTL when LP events are unavailable); the old header keeps
+ * being used meanwhile.</p>
+ */
+public final class ChatHeaderCache {
+    private ChatHeaderCache() {}
+
+    private static final long TTL_WITHOUT_EVENTS_NANOS = 60_000_000_000L;
+
+    /** Nodes checked by routing for every message; prefetched on login. */
+    private static final String[] PREFETCH_NODES = {
+            AdminChatState.NODE_ADMIN_CHAT,
+            SpyState.NODE_SPY,
+            FloodControl.NODE_BYPASS
+    };
+
+    /** @param prefix null when the player has no (non-blank) prefix */
+    public record Header(Component prefix, Component name, long builtNanos) {}
+
+    private static final Map<UUID, Header> HEADERS = new ConcurrentHashMap<>();
+    private static final Set<UUID> PENDING = ConcurrentHashMap.newKeySet();
+    /** LuckPerms recalculated these users; rebuilt on their next message. */
+    private static final Set<UUID> STALE = ConcurrentHashMap.newKeySet();
+
+    private static volatile ExecutorService executor;
+    /** Bumped on config reload; headers built before that are refreshed on next use. */
+    private static volatile long generationNanos = System.nanoTime();
+
+    static {
+        // Called on a LuckPerms thread: only flag, the rebuild is scheduled from the server thread.
+        LuckPermsCompat.addUserDataListener(STALE::add);
+    }
+
+    public static synchronized void start() {
+        HEADERS.clear();
+        PENDING.clear();
+        STALE.clear();
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "multichat-lp");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static synchronized void stop() {
+        ExecutorService ex = executor;
+        executor = null;
+        if (ex != null) ex.shutdownNow();
+        HEADERS.clear();
+        PENDING.clear();
+        STALE.clear();
+    }
+
+    public static void forget(UUID playerId) {
+        if (playerId == null) return;
+        HEADERS.remove(playerId);
+        STALE.remove(playerId);
+    }
+
+    /** Config changed (e.g. luckPermsPrefixFormat): rebuild headers lazily. */
+    public static void invalidateAll() {
+        generationNanos = System.nanoTime();
+    }
+
+    /**
+     * Cached header, or null if not warmed yet. Never blocks; schedules a (re)build when missing or stale.
+     */
+    public static Header get(ServerPlayer player) {
+        Header h = HEADERS.get(player.getUUID());
+        if (h == null || isStale(h) || STALE.contains(player.getUUID())) warm(player);
+        return h;
+    }
+
+    /** Cached header of a (possibly offline) player, without scheduling anything. */
+    public static Header peek(UUID playerId) {
+        return playerId == null ? null : HEADERS.get(playerId);
+    }
+
+    private static boolean isStale(Header h) {
+        if (h.builtNanos() - generationNanos < 0) return true;
+        return !LuckPermsCompat.userDataEventsLive() && System.nanoTime() - h.builtNanos() > TTL_WITHOUT_EVENTS_NANOS;
+    }
+
+    /** Builds the header (and prefetches permission decisions) on the LuckPerms worker thread. */
+    public static void warm(ServerPlayer player) {
+        ExecutorService ex = executor;
+        if (ex == null || player == null) return;
+        UUID id = player.getUUID();
+        if (!PENDING.add(id)) return;
+        try {
+            ex.execute(() -> {
+                try {
+                    STALE.remove(id);
+                    long built = System.nanoTime();
+                    Component lp = LuckPermsCompat.getPrefix(player);
+                    Component prefix = lp.getString().isEmpty() ? null : lp;
+                    Component name = PrefixNameStyler.styleName(player);
+                    if (executor != null) {
+                        Header h = new Header(prefix, name, built);
+                        HEADERS.put(id, h);
+                        // Logged out while queued: forget() may already have run, so undo our own put.
+                        // (disconnected is set before the logout event that calls forget.)
+                        if (player.hasDisconnected()) HEADERS.remove(id, h);
+                    }
+
+                    for (String node : PREFETCH_NODES) Perms.prefetch(player, node);
+                } catch (Throwable t) {
+                    MultiChatMod.LOGGER.debug("Chat header warm-up failed for {}", id, t);
+                } finally {
+                    PENDING.remove(id);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            PENDING.remove(id);
+        }
+    }
+}
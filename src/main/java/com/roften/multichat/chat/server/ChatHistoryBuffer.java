@@ -1,69 +1,417 @@
 package com.roften.multichat.chat.server;
 
-import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.chat.ChatChannel;
 import net.minecraft.network.chat.Component;
 import net.minecraft.resources.ResourceKey;
 import net.minecraft.world.level.Level;
 
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Supplier;
 
 /**
  * Lightweight in-memory buffer of recently routed LOCAL messages.
  * Used for admin "history in radius" command.
+ *
+ * <p>Fixed-capacity ring: appending and evicting the oldest record are O(1), the capacity
+ * ({@code admin.areaHistory.maxMessages}) is applied on config load only.</p>
+ *
+ * <p>Messages are stored compactly in parallel arrays (time, sender, channel, dimension id, float
+ * coordinates, raw typed text) instead of as formatted component trees; a chat line is rendered
+ * again only for records a query returns.</p>
+ *
+ * <p>Radius queries go through a spatial index: per dimension, a map of {@value #CELL_SIZE}-block
+ * XZ grid cells, each holding the sequence numbers of its records in time order. A query visits only
+ * the cells intersecting the radius, walks each one from the newest record back, and stops at the
+ * time cutoff.</p>
+ *
+ * <p>All state is guarded by the class monitor; queries copy the matching records out under it and
+ * render the chat lines after releasing it.</p>
  */
 public final class ChatHistoryBuffer {
     private ChatHistoryBuffer() {}
 
-    private static final Deque<Record> BUFFER = new ConcurrentLinkedDeque<>();
+    private static final int DEFAULT_CAPACITY = 2000;
+    /** Grid cell edge in blocks (power of two, see {@link #cell}). */
+    private static final int CELL_SIZE = 64;
+    private static final int CELL_SHIFT = 6;
 
-    public static void recordLocal(ResourceKey<Level> dim, double x, double y, double z, Component formatted) {
-        if (dim == null || formatted == null) return;
-        BUFFER.addLast(new Record(System.currentTimeMillis(), dim, x, y, z, formatted, ChatChannel.LOCAL));
-        trim();
+    private static Store store = new Store(DEFAULT_CAPACITY);
+
+    /** Dimensions seen so far, by small id (a handful per server; never shrinks). */
+    private static final List<ResourceKey<Level>> DIMENSIONS = new ArrayList<>();
+    private static final Map<ResourceKey<Level>, Integer> DIMENSION_IDS = new HashMap<>();
+    /** dimension id -> cell key -> sequence numbers. */
+    private static final List<Map<Long, Seqs>> INDEX = new ArrayList<>();
+
+    /** Older persisted records not read yet (see {@link #deferOlder}); merged in before first use. */
+    private static Supplier<List<Stored>> pendingOlder;
+
+    /** One record in plain form, for persistence ({@link HistorySnapshot}) and queries. */
+    record Stored(long tsMillis, ResourceKey<Level> dimension, float x, float y, float z, ChatChannel channel,
+                  UUID sender, String senderName, String text, Component prerendered) {
+
+        /** The chat line as it would be shown now. Not under the buffer lock. */
+        Component render() {
+            if (prerendered != null) return prerendered;
+            return RoutedMessage.renderStored(channel, tsMillis, sender, senderName, text);
+        }
     }
 
-    public static void recordLocalDeath(ResourceKey<Level> dim, double x, double y, double z, Component formatted) {
+    /**
+     * Records a LOCAL chat message. Only the raw text is kept; the line is rendered again when queried.
+     */
+    public static synchronized void recordLocal(ResourceKey<Level> dim, double x, double y, double z,
+                                                UUID sender, String senderName, String text) {
+        if (dim == null || sender == null || text == null) return;
+        append(System.currentTimeMillis(), dimensionId(dim), x, y, z, ChatChannel.LOCAL, sender, senderName, text, null);
+    }
+
+    /**
+     * Records an already formatted LOCAL death line (vanilla death messages are translatable
+     * components, so they are kept as they are; they are rare next to chat).
+     */
+    public static synchronized void recordLocalDeath(ResourceKey<Level> dim, double x, double y, double z, Component formatted) {
         if (dim == null || formatted == null) return;
-        BUFFER.addLast(new Record(System.currentTimeMillis(), dim, x, y, z, formatted, ChatChannel.LOCAL));
-        trim();
+        append(System.currentTimeMillis(), dimensionId(dim), x, y, z, ChatChannel.LOCAL, null, null, null, formatted);
+    }
+
+    private static void append(long ts, int dimId, double x, double y, double z, ChatChannel channel,
+                               UUID sender, String senderName, String text, Component prerendered) {
+        // Indexed by the stored float coordinates: eviction recomputes the cell from them, and the double
+        // can fall into the neighbouring cell ((float) 63.99999999 == 64f).
+        float fx = (float) x;
+        float fz = (float) z;
+        Store s = store;
+        long seq = s.next;
+        int slot = s.slot(seq);
+        // The evicted record is the oldest overall, so it is at the front of its cell.
+        if (seq >= s.capacity) {
+            unindex(s.dims[slot], cellKey(cell(s.xs[slot]), cell(s.zs[slot])), seq - s.capacity);
+        }
+
+        s.ts[slot] = ts;
+        s.dims[slot] = (short) dimId;
+        s.xs[slot] = fx;
+        s.ys[slot] = (float) y;
+        s.zs[slot] = fz;
+        s.channels[slot] = (byte) channel.ordinal();
+        s.senderMost[slot] = sender == null ? 0L : sender.getMostSignificantBits();
+        s.senderLeast[slot] = sender == null ? 0L : sender.getLeastSignificantBits();
+        s.senderNames[slot] = senderName;
+        s.texts[slot] = text;
+        s.prerendered[slot] = prerendered;
+        s.next = seq + 1;
+
+        INDEX.get(dimId).computeIfAbsent(cellKey(cell(fx), cell(fz)), k -> new Seqs()).add(seq);
+    }
+
+    private static void unindex(int dimId, long key, long seq) {
+        Map<Long, Seqs> cells = INDEX.get(dimId);
+        Seqs c = cells.get(key);
+        if (c == null) return;
+        c.removeOldest(seq);
+        if (c.isEmpty()) cells.remove(key);
+    }
+
+    private static int dimensionId(ResourceKey<Level> dim) {
+        Integer id = DIMENSION_IDS.get(dim);
+        if (id != null) return id;
+        int next = DIMENSIONS.size();
+        DIMENSIONS.add(dim);
+        DIMENSION_IDS.put(dim, next);
+        INDEX.add(new HashMap<>());
+        return next;
+    }
+
+    private static int cell(double coord) {
+        return ((int) Math.floor(coord)) >> CELL_SHIFT;
+    }
+
+    private static long cellKey(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Applies a new capacity (config load/reload), keeping the newest records that still fit.
+     */
+    public static synchronized void resize(int capacity) {
+        int cap = Math.max(100, capacity);
+        Store old = store;
+        if (old.capacity == cap) return;
+        store = new Store(cap);
+        for (Map<Long, Seqs> cells : INDEX) cells.clear();
+
+        long from = Math.max(old.oldest(), old.next - cap);
+        for (long seq = from; seq < old.next; seq++) {
+            int i = old.slot(seq);
+            append(old.ts[i], old.dims[i], old.xs[i], old.ys[i], old.zs[i], ChatChannel.values()[old.channels[i]],
+                    old.sender(i), old.senderNames[i], old.texts[i], old.prerendered[i]);
+        }
+    }
+
+    /** Sequence numbers held by the spatial index; equals the number of buffered records (for tests). */
+    static synchronized int indexedCount() {
+        int n = 0;
+        for (Map<Long, Seqs> cells : INDEX) {
+            for (Seqs c : cells.values()) n += c.size();
+        }
+        return n;
+    }
+
+    /** Records currently buffered (not counting deferred ones). */
+    static synchronized int size() {
+        return (int) (store.next - store.oldest());
     }
 
-    private static void trim() {
-        int max = Math.max(100, MultiChatConfig.AREA_HISTORY_MAX_MESSAGES.getAsInt());
-        while (BUFFER.size() > max) {
-            BUFFER.pollFirst();
+    public static synchronized void clear() {
+        store = new Store(store.capacity);
+        for (Map<Long, Seqs> cells : INDEX) cells.clear();
+        pendingOlder = null;
+    }
+
+    /** All records, oldest first (including deferred ones, which are loaded now). */
+    static synchronized List<Stored> export() {
+        loadPendingOlder();
+        Store s = store;
+        List<Stored> out = new ArrayList<>((int) (s.next - s.oldest()));
+        for (long seq = s.oldest(); seq < s.next; seq++) {
+            int i = s.slot(seq);
+            out.add(new Stored(s.ts[i], DIMENSIONS.get(s.dims[i]), s.xs[i], s.ys[i], s.zs[i],
+                    ChatChannel.values()[s.channels[i]], s.sender(i), s.senderNames[i], s.texts[i], s.prerendered[i]));
+        }
+        return out;
+    }
+
+    /**
+     * Inserts persisted records (oldest first) in front of whatever is buffered already;
+     * the newest ones that fit the capacity are kept.
+     */
+    static synchronized void restore(List<Stored> older) {
+        if (older.isEmpty()) return;
+        Store current = store;
+        long liveFrom = current.oldest();
+        long liveTo = current.next;
+
+        store = new Store(current.capacity);
+        for (Map<Long, Seqs> cells : INDEX) cells.clear();
+        long keepOlder = Math.max(0, current.capacity - (liveTo - liveFrom));
+        for (int k = (int) Math.max(0, older.size() - keepOlder); k < older.size(); k++) {
+            Stored r = older.get(k);
+            append(r.tsMillis(), dimensionId(r.dimension()), r.x(), r.y(), r.z(), r.channel(),
+                    r.sender(), r.senderName(), r.text(), r.prerendered());
         }
+        for (long seq = liveFrom; seq < liveTo; seq++) {
+            int i = current.slot(seq);
+            append(current.ts[i], current.dims[i], current.xs[i], current.ys[i], current.zs[i],
+                    ChatChannel.values()[current.channels[i]], current.sender(i), current.senderNames[i],
+                    current.texts[i], current.prerendered[i]);
+        }
+    }
+
+    /**
+     * Registers older persisted records to be read only when history is first needed
+     * (a query or the next snapshot), so server start does not pay for them.
+     */
+    static synchronized void deferOlder(Supplier<List<Stored>> loader) {
+        pendingOlder = loader;
+    }
+
+    private static void loadPendingOlder() {
+        Supplier<List<Stored>> loader = pendingOlder;
+        if (loader == null) return;
+        pendingOlder = null;
+        restore(loader.get());
     }
 
     /**
      * Returns formatted messages within radius (blocks) around the given point, and within the last N minutes.
+     * Oldest first.
      */
     public static List<Record> queryRecords(ResourceKey<Level> dim, double cx, double cy, double cz, int radiusBlocks, int lastMinutes) {
+        List<Stored> hits = queryStored(dim, cx, cy, cz, radiusBlocks, lastMinutes);
+        List<Record> out = new ArrayList<>(hits.size());
+        for (Stored h : hits) {
+            out.add(new Record(h.tsMillis(), h.dimension(), h.x(), h.y(), h.z(), h.render(), h.channel()));
+        }
+        return out;
+    }
+
+    /**
+     * Like {@link #queryRecords}, but returns the matching records as stored (copied out under the
+     * lock, not rendered).
+     */
+    static synchronized List<Stored> queryStored(ResourceKey<Level> dim, double cx, double cy, double cz, int radiusBlocks, int lastMinutes) {
         if (dim == null) return List.of();
+        loadPendingOlder();
+        Integer dimId = DIMENSION_IDS.get(dim);
+        if (dimId == null) return List.of();
+        Map<Long, Seqs> cells = INDEX.get(dimId);
+        if (cells.isEmpty()) return List.of();
+
         long since = System.currentTimeMillis() - (long) Math.max(1, lastMinutes) * 60_000L;
         double r = Math.max(1, radiusBlocks);
         double r2 = r * r;
 
-        List<Record> out = new ArrayList<>();
-        for (Record rec : BUFFER) {
-            if (rec.tsMillis < since) continue;
-            if (!dim.equals(rec.dimension)) continue;
-            double dx = rec.x - cx;
-            double dy = rec.y - cy;
-            double dz = rec.z - cz;
-            double d2 = dx * dx + dy * dy + dz * dz;
-            if (d2 > r2) continue;
-            out.add(rec);
+        int minX = cell(cx - r), maxX = cell(cx + r);
+        int minZ = cell(cz - r), maxZ = cell(cz + r);
+        long candidates = (long) (maxX - minX + 1) * (long) (maxZ - minZ + 1);
+
+        Store s = store;
+        Seqs hits = new Seqs();
+
+        if (candidates <= cells.size()) {
+            for (int x = minX; x <= maxX; x++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    Seqs c = cells.get(cellKey(x, z));
+                    if (c != null) collect(c, s, since, cx, cy, cz, r2, hits);
+                }
+            }
+        } else {
+            // Sparse dimension: fewer occupied cells than cells in range.
+            for (Map.Entry<Long, Seqs> e : cells.entrySet()) {
+                long key = e.getKey();
+                int x = (int) (key >> 32);
+                int z = (int) key;
+                if (x < minX || x > maxX || z < minZ || z > maxZ) continue;
+                collect(e.getValue(), s, since, cx, cy, cz, r2, hits);
+            }
+        }
+
+        // Cells are each in time order; restore global order by sequence number.
+        hits.sort();
+        List<Stored> out = new ArrayList<>(hits.size());
+        for (int i = 0; i < hits.size(); i++) {
+            int slot = s.slot(hits.get(i));
+            out.add(new Stored(s.ts[slot], dim, s.xs[slot], s.ys[slot], s.zs[slot],
+                    ChatChannel.values()[s.channels[slot]], s.sender(slot), s.senderNames[slot], s.texts[slot],
+                    s.prerendered[slot]));
         }
         return out;
     }
 
+    /**
+     * Adds matching sequence numbers of one cell to {@code hits}: newest first, until the time cutoff.
+     */
+    private static void collect(Seqs c, Store s, long since, double cx, double cy, double cz, double r2, Seqs hits) {
+        for (int i = c.size() - 1; i >= 0; i--) {
+            long seq = c.get(i);
+            if (!s.contains(seq)) continue;
+            int slot = s.slot(seq);
+            if (s.ts[slot] < since) break;
+            double dx = s.xs[slot] - cx;
+            double dy = s.ys[slot] - cy;
+            double dz = s.zs[slot] - cz;
+            if (dx * dx + dy * dy + dz * dz > r2) continue;
+            hits.add(seq);
+        }
+    }
+
     /**
      * Public so command handlers can attach coordinates / build clickable teleport links.
      */
     public record Record(long tsMillis, ResourceKey<Level> dimension, double x, double y, double z, Component formatted, ChatChannel channel) {}
+
+    /**
+     * Preallocated parallel arrays addressed by a monotonically growing sequence number
+     * (slot = seq % capacity); the oldest record is overwritten once full.
+     */
+    private static final class Store {
+        final int capacity;
+        final long[] ts;
+        final short[] dims;
+        final float[] xs;
+        final float[] ys;
+        final float[] zs;
+        final byte[] channels;
+        final long[] senderMost;
+        final long[] senderLeast;
+        /** Player name strings are the GameProfile instances, so these references are shared, not copies. */
+        final String[] senderNames;
+        final String[] texts;
+        /** Set only for lines that have no raw text (death messages). */
+        final Component[] prerendered;
+        /** Sequence number of the next append. */
+        long next;
+
+        Store(int capacity) {
+            this.capacity = capacity;
+            this.ts = new long[capacity];
+            this.dims = new short[capacity];
+            this.xs = new float[capacity];
+            this.ys = new float[capacity];
+            this.zs = new float[capacity];
+            this.channels = new byte[capacity];
+            this.senderMost = new long[capacity];
+            this.senderLeast = new long[capacity];
+            this.senderNames = new String[capacity];
+            this.texts = new String[capacity];
+            this.prerendered = new Component[capacity];
+        }
+
+        int slot(long seq) {
+            return (int) (seq % capacity);
+        }
+
+        long oldest() {
+            return Math.max(0, next - capacity);
+        }
+
+        boolean contains(long seq) {
+            return seq < next && seq >= oldest();
+        }
+
+        UUID sender(int slot) {
+            long most = senderMost[slot];
+            long least = senderLeast[slot];
+            return most == 0L && least == 0L ? null : new UUID(most, least);
+        }
+    }
+
+    /** Growable queue of sequence numbers (ascending as added); removal happens only at the front. */
+    private static final class Seqs {
+        private long[] values = new long[8];
+        private int head;
+        private int size;
+
+        void add(long seq) {
+            if (head + size == values.length) {
+                if (head > values.length / 2) {
+                    System.arraycopy(values, head, values, 0, size);
+                } else {
+                    values = Arrays.copyOfRange(values, head, head + Math.max(8, size * 2));
+                }
+                head = 0;
+            }
+            values[head + size++] = seq;
+        }
+
+        /** Drops the front entry if it is {@code seq}. */
+        void removeOldest(long seq) {
+            if (size > 0 && values[head] == seq) {
+                head++;
+                size--;
+            }
+        }
+
+        long get(int i) {
+            return values[head + i];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void sort() {
+            Arrays.sort(values, head, head + size);
+        }
+    }
 }
@@ -5,7 +5,6 @@ import com.roften.multichat.MultiChatMod;
 import com.roften.multichat.admin.AdminChatState;
 import com.roften.multichat.chat.ChatChannel;
 import com.roften.multichat.db.ChatLogDatabase;
-import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.server.MinecraftServer;
@@ -15,15 +14,12 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.neoforge.event.entity.living.LivingDeathEvent;
 
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 
 /**
  * Fallback death routing if the mixin redirect does not apply due to a signature change.
  */
 @EventBusSubscriber(modid = MultiChatMod.MODID)
 public final class DeathCompatHandler {
-    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
 
     private DeathCompatHandler() {}
 
@@ -56,12 +52,7 @@ public final class DeathCompatHandler {
         ServerLevel level = player.serverLevel();
 
         // Keep vanilla formatting: do NOT force a flat color, otherwise inner styles are lost.
-        String ts = LocalTime.now().format(TIME_FMT);
-        MutableComponent out = Component.literal("[" + ts + "]").withStyle(ChatFormatting.DARK_GRAY)
-                .append(Component.literal(" "))
-                .append(ChatChannel.LOCAL.channelBadge())
-                .append(Component.literal(" "))
-                .append(deathMsg.copy());
+        MutableComponent out = ChatFormats.deathLine(ChatChannel.LOCAL, deathMsg);
 
         ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
             for (ServerPlayer p : level.players()) {
@@ -71,11 +62,7 @@ public final class DeathCompatHandler {
             }
 
             // Also send a copy into ADMIN tab for admins (independent of /spy toggle).
-            MutableComponent adminOut = Component.literal("[" + ts + "]").withStyle(ChatFormatting.DARK_GRAY)
-                    .append(Component.literal(" "))
-                    .append(ChatChannel.ADMIN.channelBadge())
-                    .append(Component.literal(" "))
-                    .append(deathMsg.copy());
+            MutableComponent adminOut = ChatFormats.deathLine(ChatChannel.ADMIN, deathMsg);
             Component marked = AdminChatState.markAdminMirror(adminOut);
             for (ServerPlayer p : server.getPlayerList().getPlayers()) {
                 if (!AdminChatState.hasAdminChatPermission(p)) continue;
@@ -0,0 +1,163 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.moderation.Perms;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token-bucket flood control for routed chat.
+ *
+ * <p>Each player has one bucket for all channels plus an optional bucket per channel
+ * ("slow mode", e.g. TRADE). Checked at the very top of {@link ServerChatRouter#onServerChat}
+ * so rejected spam never reaches formatting, target resolution or the DB.</p>
+ */
+public final class FloodControl {
+    private FloodControl() {}
+
+    /** LuckPerms node that bypasses flood control. */
+    public static final String NODE_BYPASS = "avilixchat.flood.bypass";
+
+    /** Minimal interval between two rejection notices for the same player. */
+    private static final long NOTICE_INTERVAL_NANOS = 1_000_000_000L;
+
+    // Pre-built notices: rejected messages must stay cheap.
+    private static final Component PLAYER_NOTICE = Component.literal("Слишком часто! Подождите немного перед следующим сообщением.")
+            .withStyle(ChatFormatting.RED);
+    private static final Map<ChatChannel, Component> CHANNEL_NOTICE = new EnumMap<>(ChatChannel.class);
+
+    static {
+        for (ChatChannel ch : ChatChannel.values()) {
+            CHANNEL_NOTICE.put(ch, Component.literal("Медленный режим в канале ")
+                    .append(ch.tabTitle())
+                    .append(Component.literal(": подождите немного."))
+                    .withStyle(ChatFormatting.RED));
+        }
+    }
+
+    private static final Map<UUID, PlayerBuckets> BUCKETS = new ConcurrentHashMap<>();
+
+    // Monitoring counters (see /avilixchat flood).
+    private static final LongAdder REJECTED_PLAYER = new LongAdder();
+    private static final Map<ChatChannel, LongAdder> REJECTED_CHANNEL = new EnumMap<>(ChatChannel.class);
+
+    static {
+        for (ChatChannel ch : ChatChannel.values()) REJECTED_CHANNEL.put(ch, new LongAdder());
+    }
+
+    public enum Verdict { ALLOW, PLAYER_LIMIT, CHANNEL_LIMIT }
+
+    /**
+     * Consumes a token for this message. On rejection the sender gets a (rate-limited) notice.
+     *
+     * @return true if the message may be routed.
+     */
+    public static boolean tryAcquire(ServerPlayer sender, ChatChannel channel) {
+        if (sender == null || channel == null) return true;
+        if (!MultiChatConfig.FLOOD_ENABLED.getAsBoolean()) return true;
+
+        long now = System.nanoTime();
+        PlayerBuckets b = BUCKETS.computeIfAbsent(sender.getUUID(), u -> new PlayerBuckets(now));
+        Verdict v = b.tryAcquire(channel, now);
+        if (v == Verdict.ALLOW) return true;
+
+        // Bypass is checked only for would-be rejections, so normal traffic pays no permission lookup.
+        if (Perms.has(sender, NODE_BYPASS)) return true;
+
+        if (v == Verdict.PLAYER_LIMIT) REJECTED_PLAYER.increment();
+        else REJECTED_CHANNEL.get(channel).increment();
+
+        if (b.shouldNotify(now)) {
+            sender.sendSystemMessage(v == Verdict.PLAYER_LIMIT ? PLAYER_NOTICE : CHANNEL_NOTICE.get(channel));
+        }
+        return false;
+    }
+
+    public static void forget(UUID playerId) {
+        if (playerId == null) return;
+        BUCKETS.remove(playerId);
+    }
+
+    public static void clear() {
+        BUCKETS.clear();
+    }
+
+    public static long rejectedByPlayerLimit() {
+        return REJECTED_PLAYER.sum();
+    }
+
+    public static long rejectedByChannelLimit(ChatChannel channel) {
+        LongAdder a = REJECTED_CHANNEL.get(channel);
+        return a == null ? 0L : a.sum();
+    }
+
+    private static final class PlayerBuckets {
+        private final Bucket player;
+        private final Bucket[] channels = new Bucket[ChatChannel.values().length];
+        private long lastNoticeNanos;
+
+        PlayerBuckets(long now) {
+            this.player = new Bucket(now);
+            for (int i = 0; i < channels.length; i++) channels[i] = new Bucket(now);
+            this.lastNoticeNanos = now - NOTICE_INTERVAL_NANOS;
+        }
+
+        synchronized Verdict tryAcquire(ChatChannel channel, long now) {
+            int pBurst = MultiChatConfig.FLOOD_PLAYER_BURST.getAsInt();
+            int pRate = MultiChatConfig.FLOOD_PLAYER_PER_MINUTE.getAsInt();
+            int cBurst = MultiChatConfig.getFloodChannelBurst(channel);
+            int cRate = MultiChatConfig.getFloodChannelPerMinute(channel);
+
+            Bucket ch = channels[channel.ordinal()];
+            player.refill(now, pBurst, pRate);
+            if (cBurst > 0) ch.refill(now, cBurst, cRate);
+
+            // Check both before consuming, so a channel rejection does not also drain the player bucket.
+            if (player.tokens < 1.0) return Verdict.PLAYER_LIMIT;
+            if (cBurst > 0 && ch.tokens < 1.0) return Verdict.CHANNEL_LIMIT;
+
+            player.tokens -= 1.0;
+            if (cBurst > 0) ch.tokens -= 1.0;
+            return Verdict.ALLOW;
+        }
+
+        synchronized boolean shouldNotify(long now) {
+            if (now - lastNoticeNanos < NOTICE_INTERVAL_NANOS) return false;
+            lastNoticeNanos = now;
+            return true;
+        }
+    }
+
+    private static final class Bucket {
+        /** Negative = not initialized yet (start full on first use). */
+        double tokens = -1.0;
+        long lastNanos;
+
+        Bucket(long now) {
+            this.lastNanos = now;
+        }
+
+        void refill(long now, int burst, int perMinute) {
+            if (tokens < 0) {
+                tokens = burst;
+                lastNanos = now;
+                return;
+            }
+            long elapsed = now - lastNanos;
+            if (elapsed > 0) {
+                tokens = Math.min(burst, tokens + elapsed * (perMinute / 60_000_000_000.0));
+                lastNanos = now;
+            } else if (tokens > burst) {
+                tokens = burst;
+            }
+        }
+    }
+}
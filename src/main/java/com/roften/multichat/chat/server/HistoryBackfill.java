@@ -0,0 +1,134 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.admin.AdminChatState;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.moderation.Perms;
+import com.roften.multichat.network.HistoryBackfillPacket;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import net.neoforged.neoforge.network.PacketDistributor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Sends recent history of the channels a player can read when they join, so tabs are not empty.
+ *
+ * <p>GLOBAL/TRADE/CLAN/ADMIN come from {@link ChannelHistory} (CLAN: the player's own party/team,
+ * ADMIN: only with the admin chat node); LOCAL comes from {@link ChatHistoryBuffer} around the join
+ * position. Lines are merged oldest first and sent as compressed {@link HistoryBackfillPacket} chunks,
+ * a few per tick shared round-robin by all joining players, so a mass rejoin after a restart is spread
+ * out. Stored lines are rendered only when their chunk is sent.</p>
+ */
+@EventBusSubscriber(modid = MultiChatMod.MODID)
+public final class HistoryBackfill {
+    private HistoryBackfill() {}
+
+    /** A line waiting to be sent: a stored channel entry or area record, rendered when its chunk goes out. */
+    private record Pending(long tsMillis, ChatChannel channel, ChannelHistory.Entry entry, ChatHistoryBuffer.Stored area) {
+        Component render() {
+            return entry != null ? entry.render() : area.render();
+        }
+    }
+
+    /** Players with lines left to send, in round-robin order. Server thread only. */
+    private static final LinkedHashMap<UUID, ArrayDeque<Pending>> QUEUES = new LinkedHashMap<>();
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        if (!MultiChatConfig.BACKFILL_ENABLED.get()) return;
+        // Vanilla / outdated clients can't receive the payload.
+        if (!player.connection.hasChannel(HistoryBackfillPacket.TYPE)) return;
+
+        List<Pending> lines = collect(player);
+        if (!lines.isEmpty()) QUEUES.put(player.getUUID(), new ArrayDeque<>(lines));
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        QUEUES.remove(event.getEntity().getUUID());
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        if (QUEUES.isEmpty()) return;
+        MinecraftServer server = event.getServer();
+        int budget = MultiChatConfig.BACKFILL_PACKETS_PER_TICK.getAsInt();
+        int perPacket = MultiChatConfig.BACKFILL_LINES_PER_PACKET.getAsInt();
+
+        while (budget > 0 && !QUEUES.isEmpty()) {
+            Iterator<Map.Entry<UUID, ArrayDeque<Pending>>> it = QUEUES.entrySet().iterator();
+            Map.Entry<UUID, ArrayDeque<Pending>> e = it.next();
+            it.remove();
+
+            ServerPlayer player = server.getPlayerList().getPlayer(e.getKey());
+            if (player == null) continue;
+
+            ArrayDeque<Pending> queue = e.getValue();
+            List<HistoryBackfillPacket.Line> chunk = new ArrayList<>(Math.min(perPacket, queue.size()));
+            while (chunk.size() < perPacket && !queue.isEmpty()) {
+                Pending p = queue.pollFirst();
+                chunk.add(new HistoryBackfillPacket.Line(p.channel(), p.render()));
+            }
+            PacketDistributor.sendToPlayer(player, HistoryBackfillPacket.encode(chunk, server.registryAccess()));
+            budget--;
+
+            // Back of the line.
+            if (!queue.isEmpty()) QUEUES.put(e.getKey(), queue);
+        }
+    }
+
+    public static void clear() {
+        QUEUES.clear();
+    }
+
+    private static List<Pending> collect(ServerPlayer player) {
+        int perChannel = MultiChatConfig.BACKFILL_MESSAGES_PER_CHANNEL.getAsInt();
+        if (perChannel <= 0) return List.of();
+
+        List<Pending> out = new ArrayList<>();
+        for (ChatChannel ch : ChatChannel.values()) {
+            switch (ch) {
+                case LOCAL -> {
+                    int minutes = MultiChatConfig.BACKFILL_LOCAL_MINUTES.getAsInt();
+                    if (minutes <= 0) continue;
+                    List<ChatHistoryBuffer.Stored> area = ChatHistoryBuffer.queryStored(player.level().dimension(),
+                            player.getX(), player.getY(), player.getZ(), MultiChatConfig.LOCAL_RADIUS_BLOCKS.getAsInt(), minutes);
+                    // Newest perChannel lines (area history holds LOCAL chat and LOCAL death lines only).
+                    for (int i = Math.max(0, area.size() - perChannel); i < area.size(); i++) {
+                        ChatHistoryBuffer.Stored r = area.get(i);
+                        out.add(new Pending(r.tsMillis(), ChatChannel.LOCAL, null, r));
+                    }
+                }
+                case CLAN -> addAll(out, ChannelHistory.recent(ch, ChannelHistory.clanKey(player), perChannel));
+                case ADMIN -> {
+                    if (Perms.has(player, AdminChatState.NODE_ADMIN_CHAT)) {
+                        addAll(out, ChannelHistory.recent(ch, null, perChannel));
+                    }
+                }
+                default -> addAll(out, ChannelHistory.recent(ch, null, perChannel));
+            }
+        }
+        // Stable sort: same-millisecond lines of one channel keep their order.
+        out.sort(Comparator.comparingLong(Pending::tsMillis));
+        return out;
+    }
+
+    private static void addAll(List<Pending> out, List<ChannelHistory.Entry> entries) {
+        for (ChannelHistory.Entry e : entries) out.add(new Pending(e.tsMillis(), e.channel(), e, null));
+    }
+}
@@ -0,0 +1,396 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.chat.ChatChannel;
+import net.minecraft.core.HolderLookup;
+import net.minecraft.core.registries.Registries;
+import net.minecraft.network.chat.Component;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.storage.LevelResource;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the in-memory chat history ({@link ChatHistoryBuffer}, {@link ChannelHistory}) to
+ * {@code <world>/avilixchat/chat_history.bin} on server stop and every few minutes, and restores it on start.
+ *
+ * <p>File layout (big-endian): header {@code magic, version, tableOffset}, then section bodies, then the
+ * section table ({@code count} x {@code kind, channel, key, offset, length, records}). Area history is
+ * split into segments of {@value #AREA_SEGMENT} records: the newest segment is read on start, older ones
+ * only when area history is first queried. Unknown versions are ignored (history starts empty), and so is a
+ * file whose table or sections do not fit the bytes actually present.</p>
+ *
+ * <p>Snapshots are encoded on the server thread and written on a background thread; the final one on
+ * server stop is waited for.</p>
+ */
+@EventBusSubscriber(modid = MultiChatMod.MODID)
+public final class HistorySnapshot {
+    private HistorySnapshot() {}
+
+    private static final int MAGIC = 0x41564348; // "AVCH"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8;
+
+    private static final byte KIND_AREA = 1;
+    private static final byte KIND_CHANNEL = 2;
+    private static final int AREA_SEGMENT = 2048;
+
+    /** Smallest encoded table entry / records (all strings null), to bound counts before allocating. */
+    private static final int MIN_SECTION_BYTES = 1 + 1 + 4 + 8 + 4 + 4;
+    private static final int MIN_AREA_RECORD_BYTES = 8 + 4 + 3 * 4 + 1 + 16 + 3 * 4;
+    private static final int MIN_CHANNEL_RECORD_BYTES = 8 + 16 + 2 * 4;
+
+    private record Section(byte kind, byte channel, String key, long offset, int length, int records) {}
+
+    private static ExecutorService io;
+    private static int ticks;
+
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        if (!MultiChatConfig.HISTORY_PERSISTENCE_ENABLED.get()) return;
+        int minutes = MultiChatConfig.HISTORY_SAVE_INTERVAL_MINUTES.getAsInt();
+        if (minutes <= 0) return;
+
+        if (++ticks < minutes * 60 * 20) return;
+        ticks = 0;
+        save(event.getServer(), false);
+    }
+
+    /** Restores the last snapshot (server start, before players join). */
+    public static synchronized void load(MinecraftServer server) {
+        ticks = 0;
+        if (io == null) {
+            io = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "multichat-history-io");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        if (!MultiChatConfig.HISTORY_PERSISTENCE_ENABLED.get()) return;
+
+        Path file = file(server);
+        if (!Files.exists(file)) return;
+
+        HolderLookup.Provider registries = server.registryAccess();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<Section> sections = readTable(ch);
+            if (sections == null) {
+                MultiChatMod.LOGGER.warn("Ignoring chat history snapshot {} (unknown or damaged format)", file);
+                return;
+            }
+
+            List<Section> area = new ArrayList<>();
+            List<ChannelHistory.Group> groups = new ArrayList<>();
+            for (Section s : sections) {
+                if (s.kind() == KIND_AREA) {
+                    area.add(s);
+                } else {
+                    groups.add(readChannel(ch, s));
+                }
+            }
+
+            // Sections are written oldest first: read the newest now, the rest on first use.
+            List<ChatHistoryBuffer.Stored> newest = area.isEmpty()
+                    ? List.of()
+                    : readArea(ch, area.get(area.size() - 1), registries);
+
+            // Everything read now was valid; only then touch the live history.
+            for (ChannelHistory.Group g : groups) ChannelHistory.restore(g);
+            ChatHistoryBuffer.restore(newest);
+            if (area.size() > 1) {
+                List<Section> deferred = List.copyOf(area.subList(0, area.size() - 1));
+                ChatHistoryBuffer.deferOlder(() -> readAreaSegments(file, deferred, registries));
+            }
+        } catch (Throwable t) {
+            MultiChatMod.LOGGER.warn("Failed to restore chat history from {}", file, t);
+        }
+    }
+
+    /**
+     * Writes a snapshot. The final one (server stop) blocks until it is on disk.
+     */
+    public static synchronized void save(MinecraftServer server, boolean wait) {
+        if (server == null || io == null || !MultiChatConfig.HISTORY_PERSISTENCE_ENABLED.get()) return;
+
+        final Path file = file(server);
+        final List<Section> sections = new ArrayList<>();
+        final List<byte[]> bodies = new ArrayList<>();
+        try {
+            HolderLookup.Provider registries = server.registryAccess();
+            List<ChatHistoryBuffer.Stored> area = ChatHistoryBuffer.export();
+            for (int from = 0; from < area.size(); from += AREA_SEGMENT) {
+                List<ChatHistoryBuffer.Stored> seg = area.subList(from, Math.min(area.size(), from + AREA_SEGMENT));
+                bodies.add(encodeArea(seg, registries));
+                sections.add(new Section(KIND_AREA, (byte) ChatChannel.LOCAL.ordinal(), null, 0, 0, seg.size()));
+            }
+            for (ChannelHistory.Group g : ChannelHistory.export()) {
+                if (g.entries().isEmpty()) continue;
+                bodies.add(encodeChannel(g.entries()));
+                sections.add(new Section(KIND_CHANNEL, (byte) g.channel().ordinal(), g.clanKey(), 0, 0, g.entries().size()));
+            }
+        } catch (Throwable t) {
+            MultiChatMod.LOGGER.warn("Failed to encode chat history snapshot", t);
+            return;
+        }
+
+        Runnable write = () -> {
+            try {
+                write(file, sections, bodies);
+            } catch (Throwable t) {
+                MultiChatMod.LOGGER.warn("Failed to write chat history snapshot {}", file, t);
+            }
+        };
+        try {
+            var f = io.submit(write);
+            if (wait) f.get(30, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down.
+        } catch (Throwable t) {
+            MultiChatMod.LOGGER.warn("Chat history snapshot did not finish in time", t);
+        }
+    }
+
+    /** Stops the writer thread (after the final {@link #save}). */
+    public static synchronized void stop() {
+        ExecutorService ex = io;
+        io = null;
+        if (ex != null) ex.shutdown();
+    }
+
+    private static Path file(MinecraftServer server) {
+        return server.getWorldPath(LevelResource.ROOT).resolve("avilixchat").resolve("chat_history.bin");
+    }
+
+    // -------------------- file layout --------------------
+
+    private static void write(Path file, List<Section> sections, List<byte[]> bodies) throws IOException {
+        Files.createDirectories(file.getParent());
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = HEADER_BYTES;
+            ByteArrayOutputStream tableBytes = new ByteArrayOutputStream();
+            DataOutputStream table = new DataOutputStream(tableBytes);
+            table.writeInt(sections.size());
+            for (int i = 0; i < sections.size(); i++) {
+                Section s = sections.get(i);
+                byte[] body = bodies.get(i);
+                writeFully(ch, ByteBuffer.wrap(body), pos);
+                table.writeByte(s.kind());
+                table.writeByte(s.channel());
+                writeString(table, s.key());
+                table.writeLong(pos);
+                table.writeInt(body.length);
+                table.writeInt(s.records());
+                pos += body.length;
+            }
+            writeFully(ch, ByteBuffer.wrap(tableBytes.toByteArray()), pos);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(pos);
+            header.flip();
+            writeFully(ch, header, 0);
+            ch.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @return null if the file is not a snapshot of a known version, or its table does not describe
+     *         sections that fit between the header and the table
+     */
+    private static List<Section> readTable(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size < HEADER_BYTES) return null;
+        ByteBuffer header = readFully(ch, 0, HEADER_BYTES);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) return null;
+        long tableOffset = header.getLong();
+        if (tableOffset < HEADER_BYTES || tableOffset > size - 4 || size - tableOffset > Integer.MAX_VALUE) return null;
+
+        int tableBytes = (int) (size - tableOffset);
+        DataInputStream in = stream(readFully(ch, tableOffset, tableBytes));
+        int count = in.readInt();
+        if (count < 0 || count > (tableBytes - 4) / MIN_SECTION_BYTES) return null;
+
+        List<Section> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Section s = new Section(in.readByte(), in.readByte(), readString(in), in.readLong(), in.readInt(), in.readInt());
+            if (!fits(s, tableOffset)) return null;
+            out.add(s);
+        }
+        return out;
+    }
+
+    /** Known kind and channel, body inside the section area, and no more records than its bytes can hold. */
+    private static boolean fits(Section s, long tableOffset) {
+        int minRecord;
+        if (s.kind() == KIND_AREA) minRecord = MIN_AREA_RECORD_BYTES;
+        else if (s.kind() == KIND_CHANNEL) minRecord = MIN_CHANNEL_RECORD_BYTES;
+        else return false;
+
+        return s.channel() >= 0 && s.channel() < ChatChannel.values().length
+                && s.offset() >= HEADER_BYTES && s.length() >= 0 && s.offset() + s.length() <= tableOffset
+                && s.records() >= 0 && s.records() <= s.length() / minRecord;
+    }
+
+    private static List<ChatHistoryBuffer.Stored> readAreaSegments(Path file, List<Section> sections, HolderLookup.Provider registries) {
+        List<ChatHistoryBuffer.Stored> out = new ArrayList<>();
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (Section s : sections) out.addAll(readArea(ch, s, registries));
+        } catch (Throwable t) {
+            MultiChatMod.LOGGER.warn("Failed to read older chat history from {}", file, t);
+        }
+        return out;
+    }
+
+    // -------------------- section bodies --------------------
+
+    private static byte[] encodeArea(List<ChatHistoryBuffer.Stored> records, HolderLookup.Provider registries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(records.size() * 64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ChatHistoryBuffer.Stored r : records) {
+            out.writeLong(r.tsMillis());
+            writeString(out, r.dimension().location().toString());
+            out.writeFloat(r.x());
+            out.writeFloat(r.y());
+            out.writeFloat(r.z());
+            out.writeByte(r.channel().ordinal());
+            writeUuid(out, r.sender());
+            writeString(out, r.senderName());
+            writeString(out, r.text());
+            writeString(out, r.prerendered() == null ? null : Component.Serializer.toJson(r.prerendered(), registries));
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<ChatHistoryBuffer.Stored> readArea(FileChannel ch, Section s, HolderLookup.Provider registries) throws IOException {
+        DataInputStream in = stream(readFully(ch, s.offset(), s.length()));
+        List<ChatHistoryBuffer.Stored> out = new ArrayList<>(s.records());
+        for (int i = 0; i < s.records(); i++) {
+            long ts = in.readLong();
+            ResourceKey<Level> dim = ResourceKey.create(Registries.DIMENSION, ResourceLocation.parse(readString(in)));
+            float x = in.readFloat();
+            float y = in.readFloat();
+            float z = in.readFloat();
+            ChatChannel channel = readChannelByte(in);
+            UUID sender = readUuid(in);
+            String name = readString(in);
+            String text = readString(in);
+            String json = readString(in);
+            Component prerendered = json == null ? null : Component.Serializer.fromJson(json, registries);
+            if (text == null && prerendered == null) continue;
+            out.add(new ChatHistoryBuffer.Stored(ts, dim, x, y, z, channel, sender, name, text, prerendered));
+        }
+        return out;
+    }
+
+    private static byte[] encodeChannel(List<ChannelHistory.Entry> entries) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        for (ChannelHistory.Entry e : entries) {
+            out.writeLong(e.tsMillis());
+            writeUuid(out, e.sender());
+            writeString(out, e.senderName());
+            writeString(out, e.text());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static ChannelHistory.Group readChannel(FileChannel ch, Section s) throws IOException {
+        ChatChannel channel = ChatChannel.values()[s.channel()];
+        DataInputStream in = stream(readFully(ch, s.offset(), s.length()));
+        List<ChannelHistory.Entry> entries = new ArrayList<>(s.records());
+        for (int i = 0; i < s.records(); i++) {
+            long ts = in.readLong();
+            UUID sender = readUuid(in);
+            String name = readString(in);
+            String text = readString(in);
+            if (sender != null && text != null) entries.add(new ChannelHistory.Entry(ts, channel, sender, name, text));
+        }
+        return new ChannelHistory.Group(channel, s.key(), entries);
+    }
+
+    // -------------------- primitives --------------------
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        while (buf.hasRemaining()) pos += ch.write(buf, pos);
+    }
+
+    private static ByteBuffer readFully(FileChannel ch, long pos, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) throw new IOException("Truncated chat history snapshot");
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static DataInputStream stream(ByteBuffer buf) {
+        return new DataInputStream(new ByteArrayInputStream(buf.array(), buf.position(), buf.remaining()));
+    }
+
+    /** Length-prefixed UTF-8; -1 for null. */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len < 0) return null;
+        // Streams here are over in-memory buffers, so available() is exactly what is left.
+        if (len > in.available()) throw new IOException("Corrupt chat history snapshot (string length " + len + ")");
+        byte[] b = new byte[len];
+        in.readFully(b);
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private static ChatChannel readChannelByte(DataInputStream in) throws IOException {
+        int ordinal = in.readByte();
+        if (ordinal < 0 || ordinal >= ChatChannel.values().length) {
+            throw new IOException("Corrupt chat history snapshot (channel " + ordinal + ")");
+        }
+        return ChatChannel.values()[ordinal];
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id == null ? 0L : id.getMostSignificantBits());
+        out.writeLong(id == null ? 0L : id.getLeastSignificantBits());
+    }
+
+    private static UUID readUuid(DataInputStream in) throws IOException {
+        long most = in.readLong();
+        long least = in.readLong();
+        return most == 0L && least == 0L ? null : new UUID(most, least);
+    }
+}
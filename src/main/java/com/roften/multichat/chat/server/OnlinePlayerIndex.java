@@ -0,0 +1,229 @@
+package com.roften.multichat.chat.server;
+
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Server-side index of online player names.
+ *
+ * <p>Maintained on login/logout (see {@link ServerChatLifecycleHooks}) and shared by @mentions,
+ * Xaero waypoint sharer detection and moderation command name resolution/suggestions.</p>
+ *
+ * <ul>
+ *   <li>exact lookups go through a lowercase name -> UUID map;</li>
+ *   <li>"which online names occur in this text" goes through an Aho-Corasick automaton
+ *       that is rebuilt only when membership changes.</li>
+ * </ul>
+ *
+ * <p>We store UUIDs instead of {@link ServerPlayer} references: vanilla replaces the player
+ * object on respawn, so players are always resolved through the live player list.</p>
+ */
+public final class OnlinePlayerIndex {
+    private OnlinePlayerIndex() {}
+
+    /** Immutable view, swapped atomically on every membership change. */
+    private record Snapshot(Map<String, UUID> byLowerName, List<String> sortedNames, Automaton automaton) {}
+
+    private static final Snapshot EMPTY = new Snapshot(Map.of(), List.of(), Automaton.build(List.of()));
+
+    /** Mutable source of truth (lowercase name -> entry). Only touched under the class lock. */
+    private static final Map<String, Entry> ONLINE = new HashMap<>();
+
+    private static volatile Snapshot snapshot = EMPTY;
+
+    private record Entry(UUID uuid, String name) {}
+
+    public static synchronized void add(ServerPlayer player) {
+        if (player == null) return;
+        String name = player.getGameProfile().getName();
+        if (name == null || name.isBlank()) return;
+        ONLINE.put(name.toLowerCase(Locale.ROOT), new Entry(player.getUUID(), name));
+        rebuild();
+    }
+
+    public static synchronized void remove(ServerPlayer player) {
+        if (player == null) return;
+        String name = player.getGameProfile().getName();
+        if (name == null) return;
+        Entry e = ONLINE.get(name.toLowerCase(Locale.ROOT));
+        // Only drop the entry if it still belongs to this player (name re-used by a newer session).
+        if (e != null && e.uuid.equals(player.getUUID())) {
+            ONLINE.remove(name.toLowerCase(Locale.ROOT));
+            rebuild();
+        }
+    }
+
+    /** Re-seeds the index from the current player list (server start / reload). */
+    public static synchronized void reset(MinecraftServer server) {
+        ONLINE.clear();
+        if (server != null) {
+            for (ServerPlayer p : server.getPlayerList().getPlayers()) {
+                String name = p.getGameProfile().getName();
+                if (name == null || name.isBlank()) continue;
+                ONLINE.put(name.toLowerCase(Locale.ROOT), new Entry(p.getUUID(), name));
+            }
+        }
+        rebuild();
+    }
+
+    public static synchronized void clear() {
+        ONLINE.clear();
+        snapshot = EMPTY;
+    }
+
+    private static void rebuild() {
+        Map<String, UUID> byLower = new HashMap<>(ONLINE.size() * 2);
+        List<String> names = new ArrayList<>(ONLINE.size());
+        for (var e : ONLINE.entrySet()) {
+            byLower.put(e.getKey(), e.getValue().uuid);
+            names.add(e.getValue().name);
+        }
+        names.sort(String.CASE_INSENSITIVE_ORDER);
+        snapshot = new Snapshot(Map.copyOf(byLower), List.copyOf(names), Automaton.build(List.copyOf(ONLINE.keySet())));
+    }
+
+    /** Case-insensitive exact lookup of an online player by name. */
+    public static ServerPlayer byName(MinecraftServer server, String name) {
+        if (server == null || name == null || name.isEmpty()) return null;
+        UUID id = snapshot.byLowerName.get(name.toLowerCase(Locale.ROOT));
+        return id == null ? null : server.getPlayerList().getPlayer(id);
+    }
+
+    /** Online player names, sorted case-insensitively (for command suggestions). */
+    public static List<String> sortedNames() {
+        return snapshot.sortedNames;
+    }
+
+    /**
+     * Returns the online player whose name occurs in any of the given texts (case-insensitive,
+     * substring semantics). When several names occur, the longest one wins, so "Bob" does not
+     * shadow "Bobby".
+     */
+    public static ServerPlayer findFirstOccurring(MinecraftServer server, String... texts) {
+        if (server == null || texts == null) return null;
+        Snapshot snap = snapshot;
+        String best = null;
+        for (String t : texts) {
+            String m = snap.automaton.longestMatch(t);
+            if (m != null && (best == null || m.length() > best.length())) best = m;
+        }
+        if (best == null) return null;
+        UUID id = snap.byLowerName.get(best);
+        return id == null ? null : server.getPlayerList().getPlayer(id);
+    }
+
+    /**
+     * Aho-Corasick automaton over lowercase names.
+     *
+     * <p>Transitions are stored as sorted char arrays per node (binary search), so matching folds
+     * case char-by-char and never copies the input text.</p>
+     */
+    private static final class Automaton {
+        private final char[][] keys;
+        private final int[][] next;
+        private final int[] fail;
+        /** Longest pattern ending at this node (following fail links), or null. */
+        private final String[] output;
+
+        private Automaton(char[][] keys, int[][] next, int[] fail, String[] output) {
+            this.keys = keys;
+            this.next = next;
+            this.fail = fail;
+            this.output = output;
+        }
+
+        static Automaton build(List<String> patterns) {
+            List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+            List<String> out = new ArrayList<>();
+            trie.add(new TreeMap<>());
+            out.add(null);
+
+            for (String p : patterns) {
+                if (p == null || p.isEmpty()) continue;
+                int node = 0;
+                for (int i = 0; i < p.length(); i++) {
+                    char c = p.charAt(i);
+                    Integer nx = trie.get(node).get(c);
+                    if (nx == null) {
+                        nx = trie.size();
+                        trie.add(new TreeMap<>());
+                        out.add(null);
+                        trie.get(node).put(c, nx);
+                    }
+                    node = nx;
+                }
+                out.set(node, p);
+            }
+
+            int n = trie.size();
+            char[][] keys = new char[n][];
+            int[][] next = new int[n][];
+            for (int i = 0; i < n; i++) {
+                TreeMap<Character, Integer> m = trie.get(i);
+                keys[i] = new char[m.size()];
+                next[i] = new int[m.size()];
+                int k = 0;
+                for (var e : m.entrySet()) {
+                    keys[i][k] = e.getKey();
+                    next[i][k] = e.getValue();
+                    k++;
+                }
+            }
+
+            // BFS for failure links; propagate the longest output along them.
+            int[] fail = new int[n];
+            String[] output = out.toArray(new String[0]);
+            int[] queue = new int[n];
+            int head = 0, tail = 0;
+            for (int child : next[0]) {
+                fail[child] = 0;
+                queue[tail++] = child;
+            }
+            while (head < tail) {
+                int u = queue[head++];
+                for (int k = 0; k < keys[u].length; k++) {
+                    char c = keys[u][k];
+                    int v = next[u][k];
+                    int f = fail[u];
+                    int t;
+                    while ((t = step(keys, next, f, c)) < 0 && f != 0) f = fail[f];
+                    fail[v] = (t >= 0 && t != v) ? t : 0;
+                    String inherited = output[fail[v]];
+                    if (inherited != null && (output[v] == null || inherited.length() > output[v].length())) {
+                        output[v] = inherited;
+                    }
+                    queue[tail++] = v;
+                }
+            }
+            return new Automaton(keys, next, fail, output);
+        }
+
+        private static int step(char[][] keys, int[][] next, int node, char c) {
+            int idx = java.util.Arrays.binarySearch(keys[node], c);
+            return idx >= 0 ? next[node][idx] : -1;
+        }
+
+        String longestMatch(String text) {
+            if (text == null || text.isEmpty() || keys[0].length == 0) return null;
+            String best = null;
+            int node = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = Character.toLowerCase(text.charAt(i));
+                int t;
+                while ((t = step(keys, next, node, c)) < 0 && node != 0) node = fail[node];
+                node = Math.max(t, 0);
+                String o = output[node];
+                if (o != null && (best == null || o.length() > best.length())) best = o;
+            }
+            return best;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.network.ChatLinePacket;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.Connection;
+import net.minecraft.network.PacketSendListener;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.protocol.Packet;
+import net.minecraft.network.protocol.game.ClientGamePacketListener;
+import net.minecraft.network.protocol.game.ClientboundBundleDelimiterPacket;
+import net.minecraft.network.protocol.game.ClientboundSystemChatPacket;
+import net.minecraft.network.protocol.common.ClientboundCustomPayloadPacket;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.server.level.ServerPlayer;
+import net.minecraft.world.entity.player.ChatVisiblity;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.tick.ServerTickEvent;
+import net.neoforged.neoforge.network.PacketDistributor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Per-recipient outbound queue for routed chat (normal lines, structured lines, SPY, mirror, mention
+ * and area copies).
+ *
+ * <p>Lines queued during a tick are sent at the end of it as one bundle per recipient: one flush
+ * instead of one per line. Any other system message to a recipient (router notices, command feedback,
+ * other mods) first sends what is queued for them, see {@link #flush(ServerPlayer)}, so it never
+ * overtakes the lines that caused it. Each line keeps the fallback of
+ * {@link ServerPlayer#sendSystemMessage}: one that fails to encode is replaced by vanilla's "message not
+ * delivered" notice instead of being lost.</p>
+ *
+ * <p>With {@code outbound.maxLinesPerTick} set, lines beyond the cap are dropped for that recipient
+ * and replaced by one summary line. With {@code outbound.bundle} off everything is sent immediately,
+ * as before. Recipients with chat hidden get no lines, structured or not. Server thread only.</p>
+ */
+@EventBusSubscriber(modid = MultiChatMod.MODID)
+public final class OutboundChat {
+    private OutboundChat() {}
+
+    /** Vanilla limit for packets in one bundle. */
+    private static final int MAX_BUNDLE = 4096;
+
+    /** A system line, or a payload; {@code line} payloads count toward the cap, header payloads do not. */
+    private record Out(Component system, CustomPacketPayload payload, boolean line) {}
+
+    /** A recipient's lines of this tick; the counters span early flushes, so the cap is per tick. */
+    private static final class Queue {
+        final ServerPlayer target;
+        final List<Out> out = new ArrayList<>();
+        int lines;
+        int dropped;
+
+        Queue(ServerPlayer target) {
+            this.target = target;
+        }
+    }
+
+    private static final Map<UUID, Queue> QUEUES = new LinkedHashMap<>();
+
+    /** A chat line sent as a system message. */
+    public static void line(ServerPlayer target, Component msg) {
+        if (target == null || msg == null) return;
+        if (!MultiChatConfig.OUTBOUND_BUNDLE.get()) {
+            target.sendSystemMessage(msg);
+            return;
+        }
+        queue(target).out.add(new Out(msg, null, true));
+    }
+
+    /**
+     * A mod payload for the recipient's chat.
+     *
+     * @param line true if it shows a chat line (subject to the cap and to the recipient's chat
+     *             visibility), false for state it depends on
+     */
+    public static void payload(ServerPlayer target, CustomPacketPayload payload, boolean line) {
+        if (target == null || payload == null) return;
+        if (!MultiChatConfig.OUTBOUND_BUNDLE.get()) {
+            if (line && target.getChatVisibility() == ChatVisiblity.HIDDEN) return;
+            PacketDistributor.sendToPlayer(target, payload);
+            return;
+        }
+        queue(target).out.add(new Out(null, payload, line));
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(ServerTickEvent.Post event) {
+        flush();
+    }
+
+    public static void flush() {
+        if (QUEUES.isEmpty()) return;
+        int cap = MultiChatConfig.OUTBOUND_MAX_LINES_PER_TICK.getAsInt();
+        for (Queue q : QUEUES.values()) {
+            if (!q.target.hasDisconnected()) send(q, cap, true);
+        }
+        QUEUES.clear();
+    }
+
+    /**
+     * Sends what is queued for {@code target} right away. Called before any other system message to
+     * them (see ServerPlayerMixin).
+     */
+    public static void flush(ServerPlayer target) {
+        if (QUEUES.isEmpty() || target == null) return;
+        Queue q = QUEUES.get(target.getUUID());
+        if (q == null || q.target != target || q.out.isEmpty()) return;
+        if (!target.hasDisconnected()) send(q, MultiChatConfig.OUTBOUND_MAX_LINES_PER_TICK.getAsInt(), false);
+        q.out.clear();
+    }
+
+    public static void forget(UUID recipient) {
+        QUEUES.remove(recipient);
+    }
+
+    public static void clear() {
+        QUEUES.clear();
+    }
+
+    private static Queue queue(ServerPlayer target) {
+        Queue q = QUEUES.get(target.getUUID());
+        if (q == null || q.target != target) {
+            q = new Queue(target);
+            QUEUES.put(target.getUUID(), q);
+        }
+        return q;
+    }
+
+    /** Sends the queued lines; the overflow summary only goes out with the end-of-tick flush. */
+    private static void send(Queue q, int cap, boolean endOfTick) {
+        ServerPlayer target = q.target;
+        boolean hidden = target.getChatVisibility() == ChatVisiblity.HIDDEN;
+        List<Packet<? super ClientGamePacketListener>> packets = new ArrayList<>(q.out.size() + 1);
+        List<Component> texts = new ArrayList<>(q.out.size() + 1);
+        for (Out o : q.out) {
+            // Same rule as ServerPlayer#sendSystemMessage for non-overlay messages, for structured lines
+            // too; header payloads still go out, so the client's header dictionary stays in sync.
+            if (o.line() && hidden) continue;
+            if (o.line() && cap > 0 && q.lines >= cap) {
+                q.dropped++;
+                continue;
+            }
+            if (o.system() != null) {
+                packets.add(new ClientboundSystemChatPacket(o.system(), false));
+                texts.add(o.system());
+            } else {
+                packets.add(new ClientboundCustomPayloadPacket(o.payload()));
+                texts.add(o.payload() instanceof ChatLinePacket l ? l.message() : null);
+            }
+            if (o.line()) q.lines++;
+        }
+        q.out.clear();
+        if (endOfTick && q.dropped > 0 && !hidden) {
+            packets.add(new ClientboundSystemChatPacket(
+                    Component.translatable("avilixchat.outbound.overflow", q.dropped).withStyle(ChatFormatting.DARK_GRAY),
+                    false));
+            texts.add(null);
+        }
+        if (packets.isEmpty()) return;
+
+        // Bundle delimiters around individually sent packets (what the pipeline turns a bundle packet
+        // into anyway), so every line gets its own fallback; one flush at the end.
+        Connection connection = target.connection.getConnection();
+        for (int from = 0; from < packets.size(); from += MAX_BUNDLE) {
+            int to = Math.min(packets.size(), from + MAX_BUNDLE);
+            boolean bundle = to - from > 1;
+            if (bundle) connection.send(new ClientboundBundleDelimiterPacket(), null, false);
+            for (int i = from; i < to; i++) {
+                Component text = texts.get(i);
+                connection.send(packets.get(i), text == null ? null : notDelivered(text), false);
+            }
+            if (bundle) connection.send(new ClientboundBundleDelimiterPacket(), null, false);
+        }
+        connection.flushChannel();
+    }
+
+    /** As in ServerPlayer#sendSystemMessage: a line that cannot be encoded becomes a short notice. */
+    private static PacketSendListener notDelivered(Component text) {
+        return PacketSendListener.exceptionallySend(() -> new ClientboundSystemChatPacket(
+                Component.translatable("multiplayer.message_not_delivered",
+                        Component.literal(text.getString(256)).withStyle(ChatFormatting.YELLOW)).withStyle(ChatFormatting.RED),
+                false));
+    }
+}
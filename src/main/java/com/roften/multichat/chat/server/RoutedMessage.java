@@ -0,0 +1,173 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.admin.AdminChatState;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.compat.FormattedTextCache;
+import com.roften.multichat.spy.SpyState;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.TextColor;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.util.UUID;
+
+/**
+ * One chat message being routed, with its delivery variants built on first demand.
+ *
+ * <p>The normal line, SPY copy, admin-mirror copy and mention-private copy are each rendered at most
+ * once and then reused for the whole fan-out; a message nobody spies on never pays for the SPY copy.
+ * Used on the server thread only, so no synchronization.</p>
+ */
+public final class RoutedMessage {
+    private final ServerPlayer sender;
+    private final ChatChannel channel;
+    private final String text;
+
+    private ChatHeaderCache.Header header;
+    private boolean headerResolved;
+    private Component parsedText;
+    private Component message;
+
+    private Component formatted;
+    private Component spy;
+    private Component adminMirror;
+    private Component forcePrivate;
+
+    public RoutedMessage(ServerPlayer sender, ChatChannel channel, String text) {
+        this.sender = sender;
+        this.channel = channel;
+        this.text = text;
+    }
+
+    /** The normal chat line, as seen by channel recipients. */
+    public Component formatted() {
+        if (formatted == null) {
+            formatted = renderLine(channel, ChatFormats.chatTime(false), prefix(), name(), parsedText());
+        }
+        return formatted;
+    }
+
+    /**
+     * The normal chat line from its pieces; shared with {@link ChatHistoryBuffer}, which re-renders
+     * stored messages only when they are displayed.
+     */
+    static Component renderLine(ChatChannel channel, Component time, Component prefix, Component name, Component text) {
+        return ChatFormats.chat(channel).render(false, time, ChatFormats.badge(channel, false), prefix, name, colored(channel, text), null);
+    }
+
+    /** If player text has no explicit color, apply per-channel default from config. */
+    private static Component colored(ChatChannel channel, Component text) {
+        if (text.getStyle().getColor() != null) return text;
+        int rgb = MultiChatConfig.getTextRgb(channel);
+        return text.copy().withStyle(s -> s.withColor(TextColor.fromRgb(rgb)));
+    }
+
+    /** The message slot of the normal line (parsed, default color applied); sent alone in structured lines. */
+    Component message() {
+        if (message == null) message = colored(channel, parsedText());
+        return message;
+    }
+
+    /**
+     * The normal line with time and message left as {@link StructuredChat} slot markers: everything that
+     * depends only on sender and channel, sent once per recipient and reused for their following lines.
+     */
+    Component layout(Component timeSlot, Component messageSlot) {
+        return ChatFormats.chat(channel).render(false, timeSlot, ChatFormats.badge(channel, false), prefix(), name(), messageSlot, null);
+    }
+
+    ServerPlayer sender() {
+        return sender;
+    }
+
+    ChatChannel channel() {
+        return channel;
+    }
+
+    /** Current header of the sender (null until warmed); a different instance means a new layout. */
+    ChatHeaderCache.Header senderHeader() {
+        return header();
+    }
+
+    /**
+     * SPY copy: everything gray, only "SPY" is red.
+     * Each slot is flattened to one gray literal instead of re-coloring its component tree.
+     */
+    public Component spy() {
+        if (spy == null) {
+            Component p = prefix();
+            spy = SpyState.markSpy(ChatFormats.chat(channel).render(true,
+                    ChatFormats.chatTime(true),
+                    ChatFormats.badge(channel, true),
+                    p == null ? null : gray(p),
+                    Component.literal(sender.getGameProfile().getName()).withStyle(ChatFormatting.GRAY),
+                    gray(parsedText()),
+                    ChatFormats.SPY_MARK));
+        }
+        return spy;
+    }
+
+    /** Copy routed into the ADMIN tab of admins with the mirror enabled. */
+    public Component adminMirror() {
+        if (adminMirror == null) adminMirror = AdminChatState.markAdminMirror(formatted());
+        return adminMirror;
+    }
+
+    /** Copy for @mentioned players: shown in all their tabs. */
+    public Component forcePrivate() {
+        if (forcePrivate == null) {
+            forcePrivate = Component.empty()
+                    .withStyle(s -> s.withInsertion("avilixchat:force_private"))
+                    .append(formatted());
+        }
+        return forcePrivate;
+    }
+
+    /**
+     * A stored message (history buffers) rendered as its normal chat line, with the original time.
+     * Prefix and name color come from the sender's current cached header; plain name if there is none.
+     */
+    static Component renderStored(ChatChannel channel, long tsMillis, UUID sender, String senderName, String text) {
+        ChatHeaderCache.Header h = ChatHeaderCache.peek(sender);
+        Component name = h != null ? h.name() : Component.literal(String.valueOf(senderName));
+        return renderLine(channel,
+                ChatFormats.chatTimeAt(tsMillis, false),
+                h == null ? null : h.prefix(),
+                name,
+                FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, text, false));
+    }
+
+    private ChatHeaderCache.Header header() {
+        if (!headerResolved) {
+            // Never blocks on LuckPerms: until the header is warmed we show the plain name.
+            header = ChatHeaderCache.get(sender);
+            headerResolved = true;
+        }
+        return header;
+    }
+
+    private Component prefix() {
+        ChatHeaderCache.Header h = header();
+        return h == null ? null : h.prefix();
+    }
+
+    private Component name() {
+        // Player name color comes from LuckPerms meta (NOT from the prefix).
+        ChatHeaderCache.Header h = header();
+        return h != null ? h.name() : Component.literal(sender.getGameProfile().getName());
+    }
+
+    private Component parsedText() {
+        if (parsedText == null) {
+            // Parse player-provided formatting (legacy + MiniMessage subset) so hex colors work.
+            // Cached: repeated phrases (TRADE adverts, greetings) parse once.
+            parsedText = FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, text, false);
+        }
+        return parsedText;
+    }
+
+    private static Component gray(Component in) {
+        return Component.literal(in.getString()).withStyle(ChatFormatting.GRAY);
+    }
+}
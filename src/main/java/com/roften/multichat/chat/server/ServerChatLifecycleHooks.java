@@ -0,0 +1,72 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.compat.LuckPermsCompat;
+import com.roften.multichat.compat.OpenPacCompat;
+import net.minecraft.server.level.ServerPlayer;
+import net.neoforged.bus.api.SubscribeEvent;
+import net.neoforged.fml.common.EventBusSubscriber;
+import net.neoforged.neoforge.event.entity.player.PlayerEvent;
+import net.neoforged.neoforge.event.server.ServerStartedEvent;
+import net.neoforged.neoforge.event.server.ServerStartingEvent;
+import net.neoforged.neoforge.event.server.ServerStoppingEvent;
+
+/**
+ * Keeps server-side chat state (online name index, flood buckets, party membership and chat header caches, persisted history, etc.) in sync with the player list.
+ */
+@EventBusSubscriber(modid = MultiChatMod.MODID)
+public final class ServerChatLifecycleHooks {
+    private ServerChatLifecycleHooks() {}
+
+    @SubscribeEvent
+    public static void onServerStarting(ServerStartingEvent event) {
+        OnlinePlayerIndex.reset(event.getServer());
+        OpenPacCompat.bind();
+        LuckPermsCompat.bind();
+        ChatHeaderCache.start();
+        HistorySnapshot.load(event.getServer());
+    }
+
+    @SubscribeEvent
+    public static void onServerStarted(ServerStartedEvent event) {
+        // LuckPerms' API is up by now.
+        LuckPermsCompat.subscribeUserDataEvents();
+    }
+
+    @SubscribeEvent
+    public static void onServerStopping(ServerStoppingEvent event) {
+        OnlinePlayerIndex.clear();
+        FloodControl.clear();
+        OpenPacCompat.unbind();
+        LuckPermsCompat.unbind();
+        ChatHeaderCache.stop();
+        HistorySnapshot.save(event.getServer(), true);
+        HistorySnapshot.stop();
+        ChatHistoryBuffer.clear();
+        ChannelHistory.clear();
+        HistoryBackfill.clear();
+        StructuredChat.clear();
+        OutboundChat.clear();
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        OnlinePlayerIndex.add(player);
+        OpenPacCompat.invalidate();
+        // Prefix, name color and permission nodes are loaded off-thread before the first message.
+        ChatHeaderCache.warm(player);
+        StructuredChat.forget(player.getUUID());
+    }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        OnlinePlayerIndex.remove(player);
+        FloodControl.forget(player.getUUID());
+        OpenPacCompat.invalidate();
+        ChatHeaderCache.forget(player.getUUID());
+        StructuredChat.forget(player.getUUID());
+        OutboundChat.forget(player.getUUID());
+    }
+}
@@ -4,9 +4,6 @@ import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.MultiChatMod;
 import com.roften.multichat.admin.AdminChatState;
 import com.roften.multichat.chat.ChatChannel;
-import com.roften.multichat.compat.LegacyComponentParser;
-import com.roften.multichat.compat.LuckPermsCompat;
-import com.roften.multichat.compat.MiniMessageComponentParser;
 import com.roften.multichat.compat.OpenPacCompat;
 import com.roften.multichat.db.ChatLogDatabase;
 import com.roften.multichat.moderation.MuteEntry;
@@ -16,8 +13,6 @@ import com.roften.multichat.spy.SpyState;
 import com.roften.multichat.spy.AreaSpyState;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
-import net.minecraft.network.chat.MutableComponent;
-import net.minecraft.network.chat.TextColor;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
@@ -26,20 +21,15 @@ import net.neoforged.bus.api.SubscribeEvent;
 import net.neoforged.fml.common.EventBusSubscriber;
 import net.neoforged.neoforge.event.ServerChatEvent;
 
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
 import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
 @EventBusSubscriber(modid = MultiChatMod.MODID)
 public final class ServerChatRouter {
-    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm");
-
     private ServerChatRouter() {}
 
     @SubscribeEvent
@@ -69,19 +59,27 @@ public final class ServerChatRouter {
             }
         }
 
+        // Flood control: reject spam before any formatting, target resolution or DB work.
+        // After the mute check, so muted players get the mute notice and do not drain their buckets.
+        if (!FloodControl.tryAcquire(sender, channel)) {
+            return;
+        }
+
         // Hard permission gate: ADMIN channel ("$a" / "#a") is only usable by permitted players.
-        if (channel == ChatChannel.ADMIN && !Perms.has(sender.createCommandSourceStack(), AdminChatState.NODE_ADMIN_CHAT)) {
+        if (channel == ChatChannel.ADMIN && !Perms.has(sender, AdminChatState.NODE_ADMIN_CHAT)) {
             sender.sendSystemMessage(Component.literal("Нет прав на админский чат.").withStyle(ChatFormatting.RED));
             return;
         }
 
         final MinecraftServer server = sender.server;
 
-        // CLAN channel: must go through /opm so the party/clan mod handles delivery/formatting.
-        // We still keep our own formatted copy for admin mirror + spy + DB logging.
-        if (channel == ChatChannel.CLAN) {
-            final MutableComponent formattedClan = format(server, channel, sender, messageText, false);
+        // Formatted variants (normal, spy, mirror, mention) are built on first use only.
+        final RoutedMessage routed = new RoutedMessage(sender, channel, messageText);
 
+        // CLAN channel in OPM mode: go through /opm so the party/clan mod handles delivery/formatting.
+        // We still keep our own formatted copy for admin mirror + spy + DB logging.
+        // In DIRECT mode CLAN takes the normal path below (one membership lookup, our own line).
+        if (channel == ChatChannel.CLAN && MultiChatConfig.isClanViaOpm()) {
             try {
                 // Execute the command as the sender. Do NOT include a leading '/'.
                 server.getCommands().performPrefixedCommand(sender.createCommandSourceStack(), "opm " + messageText);
@@ -91,29 +89,28 @@ public final class ServerChatRouter {
             }
 
             // Admin mirror: copy into ADMIN tab (per-admin toggle).
-            Component mirrorCopy = AdminChatState.markAdminMirror(formattedClan);
             ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
                 for (ServerPlayer p : server.getPlayerList().getPlayers()) {
                     if (!AdminChatState.isMirrorEnabled(p)) continue;
-                    p.sendSystemMessage(mirrorCopy);
+                    OutboundChat.line(p, routed.adminMirror());
                 }
             });
 
             // Chat spy: send a copy to enabled admins who were NOT already a recipient.
             // We approximate recipients using our clan-target resolver.
-            final List<ServerPlayer> clanTargets = resolveTargets(ChatChannel.CLAN, sender);
-            final MutableComponent spyFormatted = format(server, channel, sender, messageText, true);
-            final Component spyMarked = SpyState.markSpy(spyFormatted);
+            final Set<UUID> clanTargets = new HashSet<>();
+            for (ServerPlayer t : resolveTargets(ChatChannel.CLAN, sender)) clanTargets.add(t.getUUID());
             ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
                 for (ServerPlayer p : server.getPlayerList().getPlayers()) {
                     if (!SpyState.isEnabled(p)) continue;
                     if (p.getUUID().equals(sender.getUUID())) continue;
-                    boolean alreadyRecipient = clanTargets.stream().anyMatch(t -> t.getUUID().equals(p.getUUID()));
-                    if (alreadyRecipient) continue;
-                    p.sendSystemMessage(spyMarked);
+                    if (clanTargets.contains(p.getUUID())) continue;
+                    OutboundChat.line(p, routed.spy());
                 }
             });
 
+            ChannelHistory.record(channel, sender, messageText);
+
             // Persist into DB (time, player, message, coordinates, channel)
             ChatLogDatabase.log(server, channel, sender, messageText);
 
@@ -122,19 +119,20 @@ public final class ServerChatRouter {
             return;
         }
 
-        final MutableComponent formatted = format(server, channel, sender, messageText, false);
-
         // @mentions: ONLY the mentioned player(s) should see this message in all tabs.
         // We do this by sending a marked private copy to the mentioned players,
         // while excluding them from the normal channel recipients.
-        final Set<ServerPlayer> mentioned = resolveMentionedPlayers(server, messageText);
-
         final List<ServerPlayer> targets = resolveTargets(channel, sender);
         if (targets.isEmpty()) {
             sender.sendSystemMessage(Component.translatable("avilixchat.no_recipients").withStyle(ChatFormatting.RED));
             return;
         }
 
+        // Party chat must not leak: in CLAN only party members can be highlighted by a mention.
+        final Set<ServerPlayer> mentioned = channel == ChatChannel.CLAN
+                ? onlyRecipients(resolveMentionedPlayers(server, messageText), targets)
+                : resolveMentionedPlayers(server, messageText);
+
         final List<ServerPlayer> normalTargets;
         if (mentioned.isEmpty()) {
             normalTargets = targets;
@@ -148,10 +146,16 @@ public final class ServerChatRouter {
         // Mixin-based system logging would otherwise record these again (once per recipient), so suppress it here.
         ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
             for (ServerPlayer target : normalTargets) {
-                target.sendSystemMessage(formatted);
+                // Modded clients: header dictionary + compact line; vanilla: full system message.
+                StructuredChat.send(target, routed);
             }
         });
 
+        // Everyone who already saw the message in some form (spy/area-spy skip them).
+        final Set<UUID> already = new HashSet<>();
+        for (ServerPlayer t : normalTargets) already.add(t.getUUID());
+        for (ServerPlayer t : mentioned) already.add(t.getUUID());
+
         // LOCAL channel extras: keep a short in-memory history and deliver to any /spy area watchers.
         if (channel == ChatChannel.LOCAL) {
             var dim = sender.level().dimension();
@@ -159,54 +163,45 @@ public final class ServerChatRouter {
             double y = sender.getY();
             double z = sender.getZ();
 
-            // Store for potential future radius-history commands.
-            ChatHistoryBuffer.recordLocal(dim, x, y, z, formatted);
+            // Store for potential future radius-history commands (raw text; rendered again on query).
+            ChatHistoryBuffer.recordLocal(dim, x, y, z, sender.getUUID(), sender.getGameProfile().getName(), messageText);
 
             // Area spy: copy local messages to admins watching a fixed radius.
             // Avoid duplicates if the admin was already a recipient (local radius OR mentioned).
-            Set<UUID> already = new HashSet<>();
-            for (ServerPlayer t : normalTargets) already.add(t.getUUID());
-            for (ServerPlayer t : mentioned) already.add(t.getUUID());
-
-            AreaSpyState.deliverIfMatches(server, sender, dim, x, y, z, formatted, p -> already.contains(p.getUUID()));
+            AreaSpyState.deliverIfMatches(server, sender, dim, x, y, z, routed.formatted(), p -> already.contains(p.getUUID()));
         }
 
         if (!mentioned.isEmpty()) {
-            final MutableComponent privateCopy = Component.empty()
-                    .withStyle(s -> s.withInsertion("avilixchat:force_private"))
-                    .append(formatted);
             ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
                 for (ServerPlayer m : mentioned) {
-                    m.sendSystemMessage(privateCopy);
+                    OutboundChat.line(m, routed.forcePrivate());
                 }
             });
         }
 
         // Admin mirror: copy messages from other channels into ADMIN tab (per-admin toggle).
         if (channel != ChatChannel.ADMIN) {
-            Component mirrorCopy = AdminChatState.markAdminMirror(formatted);
             ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
                 for (ServerPlayer p : server.getPlayerList().getPlayers()) {
                     if (!AdminChatState.isMirrorEnabled(p)) continue;
-                    p.sendSystemMessage(mirrorCopy);
+                    OutboundChat.line(p, routed.adminMirror());
                 }
             });
         }
 
         // Chat spy: send a copy to enabled admins who were NOT already a recipient.
-        final MutableComponent spyFormatted = format(server, channel, sender, messageText, true);
-        final Component spyMarked = SpyState.markSpy(spyFormatted);
         ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
             for (ServerPlayer p : server.getPlayerList().getPlayers()) {
                 if (!SpyState.isEnabled(p)) continue;
                 if (p.getUUID().equals(sender.getUUID())) continue; // no need to echo back to sender
-                boolean alreadyRecipient = normalTargets.stream().anyMatch(t -> t.getUUID().equals(p.getUUID()))
-                        || mentioned.stream().anyMatch(t -> t.getUUID().equals(p.getUUID()));
-                if (alreadyRecipient) continue; // smart filtering
-                p.sendSystemMessage(spyMarked);
+                if (already.contains(p.getUUID())) continue; // smart filtering
+                OutboundChat.line(p, routed.spy());
             }
         });
 
+        // Recent history in memory (join backfill, moderator context).
+        ChannelHistory.record(channel, sender, messageText);
+
         // Persist into DB (time, player, message, coordinates, channel)
         ChatLogDatabase.log(server, channel, sender, messageText);
 
@@ -214,75 +209,6 @@ public final class ServerChatRouter {
         MultiChatMod.LOGGER.info("[{}] {}: {}", channel.shortTag, sender.getGameProfile().getName(), messageText);
     }
 
-    private static MutableComponent format(MinecraftServer server, ChatChannel channel, ServerPlayer sender, String messageText, boolean spyTag) {
-        final String ts = LocalTime.now().format(TIME_FMT);
-
-        final TextColor spyGray = TextColor.fromLegacyFormat(ChatFormatting.GRAY);
-
-        // Build with explicit single-space separators to avoid double-spacing with LP prefixes.
-        MutableComponent out = Component.literal("[" + ts + "]")
-                .withStyle(spyTag ? ChatFormatting.GRAY : ChatFormatting.DARK_GRAY);
-        out = out.append(Component.literal(""));
-        out = out.append(spyTag ? forceColor(channel.channelBadge(), spyGray) : channel.channelBadge());
-        out = out.append(Component.literal(""));
-
-        if (spyTag) {
-            // In SPY echo: everything is gray, only "SPY" is red.
-            out = out.append(Component.literal("[").withStyle(ChatFormatting.GRAY))
-                    .append(Component.literal("SPY").withStyle(ChatFormatting.DARK_RED))
-                    .append(Component.literal("] ").withStyle(ChatFormatting.GRAY));
-        }
-
-        Component lpPrefix = LuckPermsCompat.getPrefix(sender);
-        if (!lpPrefix.getString().isEmpty()) {
-            out = out.append(spyTag ? forceColor(lpPrefix, spyGray) : lpPrefix);
-            out = out.append(Component.literal(""));
-        }
-
-        // Player name color comes from LuckPerms meta (NOT from the prefix).
-        out = out.append(spyTag
-                ? Component.literal(sender.getGameProfile().getName()).withStyle(ChatFormatting.GRAY)
-                : PrefixNameStyler.styleName(sender));
-
-        out = out.append(Component.literal(": ").withStyle(ChatFormatting.GRAY));
-
-        // Parse player-provided formatting (legacy + MiniMessage subset) so hex colors work.
-        Component parsedMsg = MiniMessageComponentParser.looksLikeMiniMessage(messageText)
-                ? MiniMessageComponentParser.parse(messageText)
-                : LegacyComponentParser.parse(messageText);
-
-        if (spyTag) {
-            // SPY echo must be monochrome.
-            parsedMsg = forceColor(parsedMsg, spyGray);
-        } else {
-            // If player text has no explicit color, apply per-channel default from config.
-            if (parsedMsg.getStyle().getColor() == null) {
-                int rgb = MultiChatConfig.getTextRgb(channel);
-                parsedMsg = parsedMsg.copy().withStyle(s -> s.withColor(net.minecraft.network.chat.TextColor.fromRgb(rgb)));
-            }
-        }
-
-        out = out.append(parsedMsg);
-        return out;
-    }
-
-    /**
-     * Forces the given component (and all its siblings) to the specified text color.
-     * Keeps click/hover events and other style bits intact.
-     */
-    private static MutableComponent forceColor(Component in, TextColor color) {
-        if (in == null) return Component.empty().copy();
-        MutableComponent out = in.copy().withStyle(s -> s.withColor(color));
-
-        // Re-color siblings recursively (parent styles do not override explicit child colors).
-        List<Component> sibs = new ArrayList<>(out.getSiblings());
-        out.getSiblings().clear();
-        for (Component sib : sibs) {
-            out.append(forceColor(sib, color));
-        }
-        return out;
-    }
-
     private static List<ServerPlayer> resolveTargets(ChatChannel channel, ServerPlayer sender) {
         return switch (channel) {
             case GLOBAL, TRADE -> new ArrayList<>(sender.server.getPlayerList().getPlayers());
@@ -306,7 +232,7 @@ public final class ServerChatRouter {
         if (server == null) return List.of();
         List<ServerPlayer> out = new ArrayList<>();
         for (ServerPlayer p : server.getPlayerList().getPlayers()) {
-            if (Perms.has(p.createCommandSourceStack(), AdminChatState.NODE_ADMIN_CHAT)) {
+            if (Perms.has(p, AdminChatState.NODE_ADMIN_CHAT)) {
                 out.add(p);
             }
         }
@@ -320,7 +246,32 @@ public final class ServerChatRouter {
     private static Set<ServerPlayer> resolveMentionedPlayers(MinecraftServer server, String messageText) {
         if (server == null || messageText == null || messageText.isEmpty()) return Set.of();
 
-        Set<String> names = new HashSet<>();
+        List<String> names = mentionNames(messageText);
+        if (names.isEmpty()) return Set.of();
+
+        Set<ServerPlayer> out = new HashSet<>();
+        for (String n : names) {
+            ServerPlayer p = OnlinePlayerIndex.byName(server, n);
+            if (p != null) out.add(p);
+        }
+        return out;
+    }
+
+    /** The mentioned players that are also recipients of the message. */
+    private static Set<ServerPlayer> onlyRecipients(Set<ServerPlayer> mentioned, List<ServerPlayer> targets) {
+        if (mentioned.isEmpty()) return mentioned;
+        Set<UUID> ids = new HashSet<>();
+        for (ServerPlayer t : targets) ids.add(t.getUUID());
+        Set<ServerPlayer> out = new HashSet<>();
+        for (ServerPlayer m : mentioned) {
+            if (ids.contains(m.getUUID())) out.add(m);
+        }
+        return out;
+    }
+
+    /** "@Name" tokens (3..16 name characters) in typed text, in order of appearance. */
+    static List<String> mentionNames(String messageText) {
+        List<String> names = new ArrayList<>();
         final int len = messageText.length();
         for (int i = 0; i < len; i++) {
             if (messageText.charAt(i) != '@') continue;
@@ -339,21 +290,10 @@ public final class ServerChatRouter {
             if (j <= start) continue;
             String rawName = messageText.substring(start, j);
             if (rawName.length() < 3 || rawName.length() > 16) continue;
-            names.add(rawName.toLowerCase(Locale.ROOT));
+            names.add(rawName);
             i = j - 1;
         }
-
-        if (names.isEmpty()) return Set.of();
-
-        Set<ServerPlayer> out = new HashSet<>();
-        for (ServerPlayer p : server.getPlayerList().getPlayers()) {
-            String n = p.getGameProfile().getName();
-            if (n == null) continue;
-            if (names.contains(n.toLowerCase(Locale.ROOT))) {
-                out.add(p);
-            }
-        }
-        return out;
+        return names;
     }
 
     private static List<ServerPlayer> resolveLocalTargets(ServerPlayer sender) {
@@ -0,0 +1,92 @@
+package com.roften.multichat.chat.server;
+
+import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.network.ChatHeaderPacket;
+import com.roften.multichat.network.ChatLinePacket;
+import net.minecraft.network.chat.Component;
+import net.minecraft.server.level.ServerPlayer;
+
+import java.time.ZoneId;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Delivers normal chat lines to modded clients as {@link ChatLinePacket}s (channel, header id, time,
+ * message) instead of full system messages.
+ *
+ * <p>The header layout (badge, LuckPerms prefix, styled name, template literals) only changes with
+ * the sender's header or the config, so each recipient gets it once as a {@link ChatHeaderPacket} and
+ * afterwards only the id. Layouts are rebuilt when {@link ChatHeaderCache} hands out a new header or
+ * {@link ChatFormats} is recompiled. Vanilla clients, or {@code structuredChat.enabled=false}, get the
+ * usual system message. Server thread only.</p>
+ */
+public final class StructuredChat {
+    private StructuredChat() {}
+
+    /** Ids a recipient is assumed to know; the client keeps more (see ClientChatLines). */
+    private static final int MAX_KNOWN = 512;
+
+    private static final Component TIME_SLOT = Component.empty().withStyle(s -> s.withInsertion(ChatLinePacket.TIME_SLOT));
+    private static final Component MESSAGE_SLOT = Component.empty().withStyle(s -> s.withInsertion(ChatLinePacket.MESSAGE_SLOT));
+
+    private record Layout(int id, ChatHeaderCache.Header header, ChatFormatTemplate template, ChatHeaderPacket packet) {}
+
+    private static final Map<UUID, EnumMap<ChatChannel, Layout>> LAYOUTS = new HashMap<>();
+    private static final Map<UUID, LinkedHashMap<Integer, Boolean>> KNOWN = new HashMap<>();
+    private static int nextId;
+
+    /** Sends the normal line of {@code routed} to {@code target}. Call inside runWithoutMixinSystemLogging. */
+    public static void send(ServerPlayer target, RoutedMessage routed) {
+        if (!MultiChatConfig.STRUCTURED_CHAT_ENABLED.get() || !target.connection.hasChannel(ChatLinePacket.TYPE)) {
+            OutboundChat.line(target, routed.formatted());
+            return;
+        }
+
+        Layout layout = layout(routed);
+        LinkedHashMap<Integer, Boolean> known = KNOWN.computeIfAbsent(target.getUUID(), k -> new LinkedHashMap<>(32, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+                return size() > MAX_KNOWN;
+            }
+        });
+        if (known.get(layout.id()) == null) {
+            OutboundChat.payload(target, layout.packet(), false);
+            known.put(layout.id(), Boolean.TRUE);
+        }
+        OutboundChat.payload(target, new ChatLinePacket(routed.channel(), layout.id(),
+                System.currentTimeMillis(), routed.message()), true);
+    }
+
+    /** Recipient left: a new session starts with an empty client dictionary. */
+    public static void forget(UUID recipient) {
+        KNOWN.remove(recipient);
+        LAYOUTS.remove(recipient);
+    }
+
+    public static void clear() {
+        KNOWN.clear();
+        LAYOUTS.clear();
+    }
+
+    private static Layout layout(RoutedMessage routed) {
+        ServerPlayer sender = routed.sender();
+        ChatChannel channel = routed.channel();
+        ChatHeaderCache.Header header = routed.senderHeader();
+        ChatFormatTemplate template = ChatFormats.chat(channel);
+
+        EnumMap<ChatChannel, Layout> bySender = LAYOUTS.computeIfAbsent(sender.getUUID(), k -> new EnumMap<>(ChatChannel.class));
+        Layout l = bySender.get(channel);
+        if (l == null || l.header() != header || l.template() != template) {
+            int id = nextId++;
+            ChatHeaderPacket packet = new ChatHeaderPacket(id, routed.layout(TIME_SLOT, MESSAGE_SLOT),
+                    ChatFormats.chatTimePattern(), ZoneId.systemDefault().getId());
+            l = new Layout(id, header, template, packet);
+            bySender.put(channel, l);
+        }
+        return l;
+    }
+}
@@ -1,11 +1,13 @@
 package com.roften.multichat.client.ui;
 
 import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.chat.ChannelPrefixTrie;
 import com.roften.multichat.chat.ChatChannel;
 import net.minecraft.network.chat.TextColor;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -25,6 +27,9 @@ public final class ClientUiConfig {
     private static final Map<ChatChannel, String> tabLabels = new EnumMap<>(ChatChannel.class);
     private static final Map<ChatChannel, Integer> tabColors = new EnumMap<>(ChatChannel.class);
 
+    /** Channel selectors of the server we are connected to; null = local config. */
+    private static volatile ChannelPrefixTrie serverSelectors;
+
     static {
         reloadFromLocalConfig();
     }
@@ -37,12 +42,15 @@ public final class ClientUiConfig {
         }
         // Local config cannot determine LuckPerms permissions. Keep strict default.
         adminTabAllowed = false;
+        serverSelectors = null;
     }
 
     public static void applyServerSync(String switchKey,
                                        Map<ChatChannel, String> labels,
                                        Map<ChatChannel, Integer> colors,
-                                       boolean adminAllowed) {
+                                       boolean adminAllowed,
+                                       Map<ChatChannel, List<String>> chatAliases,
+                                       Map<ChatChannel, List<String>> switchLetters) {
         if (switchKey != null && !switchKey.isBlank()) {
             chatSwitchKey = switchKey;
         }
@@ -53,6 +61,19 @@ public final class ClientUiConfig {
             tabColors.putAll(colors);
         }
         adminTabAllowed = adminAllowed;
+        // Missing channels fall back to the built-in defaults, as on the server.
+        serverSelectors = ChatChannel.buildAliases(chatSwitchKey, chatAliases, switchLetters);
+    }
+
+    /** New connection: forget the previous server's selectors until this one syncs. */
+    public static void clearServerSelectors() {
+        serverSelectors = null;
+    }
+
+    /** Selector table for outgoing messages: the server's if synced, else null (local config). */
+    @Nullable
+    public static ChannelPrefixTrie selectors() {
+        return serverSelectors;
     }
 
     public static String chatSwitchKey() {
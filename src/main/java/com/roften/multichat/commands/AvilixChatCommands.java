@@ -5,6 +5,13 @@ import com.mojang.brigadier.arguments.IntegerArgumentType;
 import com.roften.multichat.MultiChatMod;
 import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.admin.AdminChatState;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.server.ChannelHistory;
+import com.roften.multichat.chat.server.FloodControl;
+import com.roften.multichat.compat.FormattedTextCache;
+import com.roften.multichat.db.ChatLogDatabase;
+import com.roften.multichat.compat.LuckPermsCompat;
+import com.roften.multichat.moderation.PermissionCache;
 import com.roften.multichat.moderation.Perms;
 import com.roften.multichat.spy.AreaSpyState;
 import com.roften.multichat.spy.SpyState;
@@ -12,9 +19,13 @@ import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.commands.Commands;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.server.level.ServerPlayer;
 import net.neoforged.neoforge.event.RegisterCommandsEvent;
 
+import java.util.List;
+import java.util.Locale;
+
 /**
  * Registers the root mod command: /avilixchat ...
  *
@@ -75,6 +86,66 @@ public final class AvilixChatCommands {
                 }))
         );
 
+        // /avilixchat flood  (flood-control rejection counters)
+        root.then(Commands.literal("flood")
+                .requires(src -> Perms.has(src, AdminChatState.NODE_ADMIN_CHAT))
+                .executes(ctx -> {
+                    MutableComponent line = Component.literal("Flood rejections: player=" + FloodControl.rejectedByPlayerLimit())
+                            .withStyle(ChatFormatting.AQUA);
+                    for (ChatChannel ch : ChatChannel.values()) {
+                        line = line.append(Component.literal(" " + ch.shortTag + "=" + FloodControl.rejectedByChannelLimit(ch))
+                                .withStyle(ChatFormatting.GRAY));
+                    }
+                    final Component out = line;
+                    ctx.getSource().sendSuccess(() -> out, false);
+                    return 1;
+                })
+        );
+
+        // /avilixchat perms  (permission decision cache stats)
+        root.then(Commands.literal("perms")
+                .requires(src -> Perms.has(src, AdminChatState.NODE_ADMIN_CHAT))
+                .executes(ctx -> {
+                    long hits = PermissionCache.hits();
+                    long misses = PermissionCache.misses();
+                    long total = hits + misses;
+                    String ratio = total == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", hits * 100.0 / total);
+                    String mode = LuckPermsCompat.userDataEventsLive() ? "LuckPerms events" : "TTL only";
+                    ctx.getSource().sendSuccess(() -> Component.literal("Permission cache: hits=" + hits + " misses=" + misses
+                                    + " ratio=" + ratio + " (" + mode + ")")
+                            .withStyle(ChatFormatting.AQUA), false);
+                    return 1;
+                })
+        );
+
+        // /avilixchat textcache  (parsed prefix/message cache stats)
+        root.then(Commands.literal("textcache")
+                .requires(src -> Perms.has(src, AdminChatState.NODE_ADMIN_CHAT))
+                .executes(ctx -> {
+                    long hits = FormattedTextCache.hits();
+                    long misses = FormattedTextCache.misses();
+                    long total = hits + misses;
+                    String ratio = total == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", hits * 100.0 / total);
+                    int size = FormattedTextCache.size();
+                    long evictions = FormattedTextCache.evictions();
+                    ctx.getSource().sendSuccess(() -> Component.literal("Text cache: size=" + size + " hits=" + hits
+                                    + " misses=" + misses + " ratio=" + ratio + " evictions=" + evictions)
+                            .withStyle(ChatFormatting.AQUA), false);
+                    return 1;
+                })
+        );
+
+        // /avilixchat context <channel> [count]  (recent channel history from memory; CLAN = own party/team)
+        LiteralArgumentBuilder<CommandSourceStack> context = Commands.literal("context")
+                .requires(src -> Perms.has(src, AdminChatState.NODE_ADMIN_CHAT));
+        for (ChatChannel ch : ChatChannel.values()) {
+            context.then(Commands.literal(ch.name().toLowerCase(Locale.ROOT))
+                    .executes(ctx -> showContext(ctx.getSource(), ch, 20))
+                    .then(Commands.argument("count", IntegerArgumentType.integer(1, 200))
+                            .executes(ctx -> showContext(ctx.getSource(), ch, IntegerArgumentType.getInteger(ctx, "count")))));
+        }
+        root.then(context);
+
         event.getDispatcher().register(root);
 
         // /spy area <radius> [minutes]
@@ -125,7 +196,30 @@ public final class AvilixChatCommands {
         );
 
         event.getDispatcher().register(spy);
-        MultiChatMod.LOGGER.info("Registered /avilixchat subcommands: spy, adminmirror");
+        MultiChatMod.LOGGER.info("Registered /avilixchat subcommands: spy, adminmirror, flood, perms, textcache, context");
+    }
+
+    private static int showContext(CommandSourceStack src, ChatChannel ch, int count) {
+        String clanKey = null;
+        if (ch == ChatChannel.CLAN) {
+            ServerPlayer player = src.getPlayer();
+            if (player == null) {
+                src.sendFailure(Component.literal("CLAN history is per party: run this as a player."));
+                return 0;
+            }
+            clanKey = ChannelHistory.clanKey(player);
+        }
+        List<ChannelHistory.Entry> entries = ChannelHistory.recent(ch, clanKey, count);
+        src.sendSuccess(() -> Component.literal("Last " + entries.size() + " message(s) in " + ch.name() + ":")
+                .withStyle(ChatFormatting.AQUA), false);
+        // Rendered chat lines: keep them out of the system-message log.
+        ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
+            for (ChannelHistory.Entry e : entries) {
+                Component line = e.render();
+                src.sendSuccess(() -> line, false);
+            }
+        });
+        return entries.size();
     }
 
     /**
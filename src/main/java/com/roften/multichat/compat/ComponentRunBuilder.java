@@ -0,0 +1,57 @@
+package com.roften.multichat.compat;
+
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.chat.Style;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects styled text runs emitted by the formatting parsers and turns them into
+ * {@code empty().append(literal(run).withStyle(style))...} in one go.
+ *
+ * <p>Adjacent runs with an equal style are merged, so {@code &c&c} or a code that does not change
+ * the style never produces an extra sibling.</p>
+ */
+final class ComponentRunBuilder {
+    private final List<StringBuilder> texts = new ArrayList<>();
+    private final List<Style> styles = new ArrayList<>();
+
+    void append(String text, Style style) {
+        if (text == null) return;
+        append(text, 0, text.length(), style);
+    }
+
+    /** Appends {@code text[start, end)} without copying it into a substring first. */
+    void append(String text, int start, int end, Style style) {
+        if (start >= end) return;
+        int last = styles.size() - 1;
+        if (last >= 0 && styles.get(last).equals(style)) {
+            texts.get(last).append(text, start, end);
+            return;
+        }
+        texts.add(new StringBuilder(end - start).append(text, start, end));
+        styles.add(style);
+    }
+
+    int runCount() {
+        return texts.size();
+    }
+
+    String text(int run) {
+        return texts.get(run).toString();
+    }
+
+    Style style(int run) {
+        return styles.get(run);
+    }
+
+    MutableComponent build() {
+        MutableComponent out = Component.empty();
+        for (int i = 0; i < texts.size(); i++) {
+            out.append(Component.literal(texts.get(i).toString()).withStyle(styles.get(i)));
+        }
+        return out;
+    }
+}
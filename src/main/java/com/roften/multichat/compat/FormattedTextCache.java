@@ -0,0 +1,122 @@
+package com.roften.multichat.compat;
+
+import net.minecraft.network.chat.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of parsed formatting: (mode, raw string) to the parsed {@link Component}.
+ *
+ * <p>LuckPerms prefixes and name colors are the same handful of strings per rank, and busy channels
+ * repeat short phrases, so most parses are answered from here. Shared by the server thread and the
+ * LuckPerms worker; the map is guarded by its own monitor, parsing happens outside the lock.</p>
+ *
+ * <p>Returned components are shared between callers: append them or {@code copy()} them, never mutate.</p>
+ */
+public final class FormattedTextCache {
+    private FormattedTextCache() {}
+
+    public enum Mode {
+        LEGACY,
+        MINIMESSAGE,
+        /** MiniMessage if the text looks like it, legacy otherwise. */
+        AUTO
+    }
+
+    private record Key(Mode mode, boolean interactive, String raw) {}
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+
+    private static volatile int maxEntries = 1024;
+    private static volatile int maxLength = 256;
+
+    private static final LinkedHashMap<Key, Component> CACHE = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Component> eldest) {
+            if (size() <= maxEntries) return false;
+            EVICTIONS.increment();
+            return true;
+        }
+    };
+
+    /**
+     * Applies new limits (config load/reload) and drops everything parsed so far,
+     * since parser settings may have changed too.
+     *
+     * @param entries max cached strings, 0 disables the cache
+     * @param length  longer strings are parsed but not cached
+     */
+    public static void configure(int entries, int length) {
+        synchronized (CACHE) {
+            maxEntries = Math.max(0, entries);
+            maxLength = Math.max(0, length);
+            CACHE.clear();
+        }
+    }
+
+    public static void clear() {
+        synchronized (CACHE) {
+            CACHE.clear();
+        }
+    }
+
+    /**
+     * @param interactive allow click/hover/insertion tags (trusted text only, see {@link MiniMessageComponentParser})
+     */
+    public static Component parse(Mode mode, String raw, boolean interactive) {
+        if (raw == null || raw.isEmpty()) return Component.empty();
+        if (maxEntries == 0 || raw.length() > maxLength) {
+            return parseUncached(mode, raw, interactive);
+        }
+
+        Key key = new Key(mode, interactive, raw);
+        Component c;
+        synchronized (CACHE) {
+            c = CACHE.get(key);
+        }
+        if (c != null) {
+            HITS.increment();
+            return c;
+        }
+        MISSES.increment();
+
+        c = parseUncached(mode, raw, interactive);
+        synchronized (CACHE) {
+            // Another thread may have parsed the same string meanwhile; keep the first one.
+            Component prev = CACHE.putIfAbsent(key, c);
+            return prev != null ? prev : c;
+        }
+    }
+
+    private static Component parseUncached(Mode mode, String raw, boolean interactive) {
+        return switch (mode) {
+            case LEGACY -> LegacyComponentParser.parse(raw);
+            case MINIMESSAGE -> MiniMessageComponentParser.parse(raw, interactive);
+            case AUTO -> MiniMessageComponentParser.looksLikeMiniMessage(raw)
+                    ? MiniMessageComponentParser.parse(raw, interactive)
+                    : LegacyComponentParser.parse(raw);
+        };
+    }
+
+    public static int size() {
+        synchronized (CACHE) {
+            return CACHE.size();
+        }
+    }
+
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    public static long evictions() {
+        return EVICTIONS.sum();
+    }
+}
@@ -2,10 +2,10 @@ package com.roften.multichat.compat;
 
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
-import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.network.chat.Style;
 import net.minecraft.network.chat.TextColor;
 
+import java.util.Arrays;
 
 /**
  * Minimal legacy formatting parser.
@@ -27,107 +27,143 @@ public final class LegacyComponentParser {
         if (input == null || input.isEmpty()) {
             return Component.empty();
         }
+        ComponentRunBuilder out = new ComponentRunBuilder();
+        appendLegacy(out, input, 0, input.length(), Style.EMPTY);
+        return out.build();
+    }
 
-        // Normalize & -> § (but keep escaped \&).
-        String s = input.replace("\\&", "&").replace('&', '§');
+    /** Hex digit value per ASCII char, -1 for non-hex. */
+    private static final byte[] HEX = new byte[128];
 
-        MutableComponent out = Component.empty();
-        Style style = Style.EMPTY;
-        StringBuilder buf = new StringBuilder();
+    static {
+        Arrays.fill(HEX, (byte) -1);
+        for (int c = '0'; c <= '9'; c++) HEX[c] = (byte) (c - '0');
+        for (int c = 'a'; c <= 'f'; c++) HEX[c] = (byte) (c - 'a' + 10);
+        for (int c = 'A'; c <= 'F'; c++) HEX[c] = (byte) (c - 'A' + 10);
+    }
 
-        for (int i = 0; i < s.length(); i++) {
+    /**
+     * Parses {@code input[from, to)} starting from {@code style} and appends the styled runs to {@code out}.
+     * Used by {@link MiniMessageComponentParser} for the text between tags.
+     *
+     * <p>Single scan over the original string: {@code &} and {@code §} are both format markers,
+     * {@code \&} is a literal {@code &}, and a marker followed by an unknown code is kept as typed.</p>
+     *
+     * @return the style in effect at the end of the range
+     */
+    static Style appendLegacy(ComponentRunBuilder out, String s, int from, int to, Style style) {
+        int runStart = from;
+        int i = from;
+        while (i < to) {
             char c = s.charAt(i);
-            if (c == '§' && i + 1 < s.length()) {
-                // Flush buffer
-                if (buf.length() > 0) {
-                    out = out.append(Component.literal(buf.toString()).withStyle(style));
-                    buf.setLength(0);
-                }
 
+            // Escaped \& -> literal '&' (the '&' becomes the start of the next plain run).
+            if (c == '\\' && i + 1 < to && s.charAt(i + 1) == '&') {
+                out.append(s, runStart, i, style);
+                runStart = i + 1;
+                i += 2;
+                continue;
+            }
+
+            if ((c == '§' || c == '&') && i + 1 < to) {
                 char code = Character.toLowerCase(s.charAt(i + 1));
+                int rgb;
 
-                // Bungee/Spigot hex in form: §x§R§R§G§G§B§B
-                if (code == 'x' && i + 13 < s.length()) {
-                    // expected: § x § r § r § g § g § b § b  (14 chars including current §)
-                    // positions of hex digits: i+3, i+5, i+7, i+9, i+11, i+13
-                    if (s.charAt(i + 2) == '§'
-                            && s.charAt(i + 4) == '§'
-                            && s.charAt(i + 6) == '§'
-                            && s.charAt(i + 8) == '§'
-                            && s.charAt(i + 10) == '§'
-                            && s.charAt(i + 12) == '§') {
-                        String hex = "" + s.charAt(i + 3) + s.charAt(i + 5) + s.charAt(i + 7)
-                                + s.charAt(i + 9) + s.charAt(i + 11) + s.charAt(i + 13);
-                        if (hex.matches("[0-9a-fA-F]{6}")) {
-                            int rgb = Integer.parseInt(hex, 16);
-                            style = style.withColor(TextColor.fromRgb(rgb));
-                            i += 13;
-                            continue;
-                        }
-                    }
+                // Bungee/Spigot hex in form: §x§R§R§G§G§B§B (14 chars including current marker)
+                if (code == 'x' && (rgb = spigotHex(s, i, to)) >= 0) {
+                    out.append(s, runStart, i, style);
+                    style = style.withColor(TextColor.fromRgb(rgb));
+                    i += 14;
+                    runStart = i;
+                    continue;
                 }
 
-                // Hex in form: §#RRGGBB (after normalization from &#RRGGBB)
-                if (code == '#' && i + 7 < s.length()) {
-                    String hex = s.substring(i + 2, i + 8);
-                    if (hex.matches("[0-9a-fA-F]{6}")) {
-                        int rgb = Integer.parseInt(hex, 16);
-                        style = style.withColor(TextColor.fromRgb(rgb));
-                        i += 7;
-                        continue;
-                    }
+                // Hex in form: §#RRGGBB / &#RRGGBB
+                if (code == '#' && (rgb = hex6(s, i + 2, to)) >= 0) {
+                    out.append(s, runStart, i, style);
+                    style = style.withColor(TextColor.fromRgb(rgb));
+                    i += 8;
+                    runStart = i;
+                    continue;
                 }
 
                 ChatFormatting fmt = ChatFormatting.getByCode(code);
                 if (fmt != null) {
-                    if (fmt == ChatFormatting.RESET) {
-                        style = Style.EMPTY;
-                    } else if (fmt.isColor()) {
-                        style = style.withColor(fmt);
-                        // Reset other decorations on color change like vanilla legacy formatting does.
-                        style = style.withBold(false).withItalic(false).withUnderlined(false)
-                                .withStrikethrough(false).withObfuscated(false);
-                    } else {
-                        style = switch (fmt) {
-                            case BOLD -> style.withBold(true);
-                            case ITALIC -> style.withItalic(true);
-                            case UNDERLINE -> style.withUnderlined(true);
-                            case STRIKETHROUGH -> style.withStrikethrough(true);
-                            case OBFUSCATED -> style.withObfuscated(true);
-                            default -> style;
-                        };
-                    }
-                    i++;
+                    out.append(s, runStart, i, style);
+                    style = apply(style, fmt);
+                    i += 2;
+                    runStart = i;
                     continue;
                 }
 
                 // Unknown code - keep literally.
-                buf.append(c);
+                i++;
                 continue;
             }
 
             // Plain hex token: #RRGGBB
-            if (c == '#' && i + 6 < s.length()) {
-                String hex = s.substring(i + 1, i + 7);
-                if (hex.matches("[0-9a-fA-F]{6}")) {
-                    if (buf.length() > 0) {
-                        out = out.append(Component.literal(buf.toString()).withStyle(style));
-                        buf.setLength(0);
-                    }
-                    int rgb = Integer.parseInt(hex, 16);
-                    style = style.withColor(TextColor.fromRgb(rgb));
-                    i += 6;
-                    continue;
-                }
+            int rgb;
+            if (c == '#' && (rgb = hex6(s, i + 1, to)) >= 0) {
+                out.append(s, runStart, i, style);
+                style = style.withColor(TextColor.fromRgb(rgb));
+                i += 7;
+                runStart = i;
+                continue;
             }
 
-            buf.append(c);
+            i++;
         }
 
-        if (buf.length() > 0) {
-            out = out.append(Component.literal(buf.toString()).withStyle(style));
+        out.append(s, runStart, to, style);
+        return style;
+    }
+
+    private static Style apply(Style style, ChatFormatting fmt) {
+        if (fmt == ChatFormatting.RESET) {
+            return Style.EMPTY;
+        }
+        if (fmt.isColor()) {
+            // Reset other decorations on color change like vanilla legacy formatting does.
+            return style.withColor(fmt).withBold(false).withItalic(false).withUnderlined(false)
+                    .withStrikethrough(false).withObfuscated(false);
         }
+        return switch (fmt) {
+            case BOLD -> style.withBold(true);
+            case ITALIC -> style.withItalic(true);
+            case UNDERLINE -> style.withUnderlined(true);
+            case STRIKETHROUGH -> style.withStrikethrough(true);
+            case OBFUSCATED -> style.withObfuscated(true);
+            default -> style;
+        };
+    }
 
-        return out;
+    /**
+     * RGB of six hex digits at {@code s[at, at + 6)}, or -1 if out of range or not hex.
+     */
+    static int hex6(String s, int at, int to) {
+        if (at < 0 || at + 6 > to) return -1;
+        int rgb = 0;
+        for (int k = at; k < at + 6; k++) {
+            char c = s.charAt(k);
+            int d = c < 128 ? HEX[c] : -1;
+            if (d < 0) return -1;
+            rgb = (rgb << 4) | d;
+        }
+        return rgb;
+    }
+
+    /** {@code §x§R§R§G§G§B§B} starting at {@code at} (markers may be § or &), or -1. */
+    private static int spigotHex(String s, int at, int to) {
+        if (at + 14 > to) return -1;
+        int rgb = 0;
+        for (int k = 0; k < 6; k++) {
+            char marker = s.charAt(at + 2 + 2 * k);
+            if (marker != '§' && marker != '&') return -1;
+            char c = s.charAt(at + 3 + 2 * k);
+            int d = c < 128 ? HEX[c] : -1;
+            if (d < 0) return -1;
+            rgb = (rgb << 4) | d;
+        }
+        return rgb;
     }
 }
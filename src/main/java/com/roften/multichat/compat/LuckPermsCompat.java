@@ -1,24 +1,34 @@
 package com.roften.multichat.compat;
 
 import com.roften.multichat.MultiChatConfig;
+import com.roften.multichat.MultiChatMod;
 import net.minecraft.commands.CommandSourceStack;
 import net.minecraft.network.chat.Component;
 import net.minecraft.server.level.ServerPlayer;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 /**
  * Optional integration with the LuckPerms API.
  *
- * <p>Implemented via reflection so the mod has no hard dependency on LuckPerms.
+ * <p>Implemented via reflection so the mod has no hard dependency on LuckPerms. The API is resolved once
+ * ({@link #bind}, on server start) into method handles; when LuckPerms is absent a no-op bridge answers
+ * {@code null} everywhere, so the hot path never does reflective lookups.
  */
 public final class LuckPermsCompat {
     private LuckPermsCompat() {}
 
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
     /**
      * Returns a formatted prefix component for a player, or empty if LuckPerms is not present.
      */
@@ -36,17 +46,12 @@ public final class LuckPermsCompat {
         }
 
         String mode = String.valueOf(MultiChatConfig.LUCKPERMS_PREFIX_FORMAT.get()).trim().toUpperCase();
+        // Prefixes are per rank, so after the first player of a rank this is a cache hit.
         return switch (mode) {
-            case "MINIMESSAGE" -> MiniMessageComponentParser.parse(s);
+            case "MINIMESSAGE" -> FormattedTextCache.parse(FormattedTextCache.Mode.MINIMESSAGE, s, true);
             case "PLAIN" -> Component.literal(s);
-            case "LEGACY" -> LegacyComponentParser.parse(s);
-            default -> {
-                // AUTO
-                if (MiniMessageComponentParser.looksLikeMiniMessage(s)) {
-                    yield MiniMessageComponentParser.parse(s);
-                }
-                yield LegacyComponentParser.parse(s);
-            }
+            case "LEGACY" -> FormattedTextCache.parse(FormattedTextCache.Mode.LEGACY, s, true);
+            default -> FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, s, true);
         };
     }
 
@@ -68,11 +73,7 @@ public final class LuckPermsCompat {
         if (player == null) return null;
         UUID uuid = player.getUUID();
 
-        String raw = null;
-        for (String key : NAME_COLOR_META_KEYS) {
-            raw = getMetaValueString(uuid, key);
-            if (raw != null && !raw.isBlank()) break;
-        }
+        String raw = bridge().metaValue(uuid, NAME_COLOR_META_KEYS);
         if (raw == null || raw.isBlank()) return null;
 
         String s = trimAscii(raw);
@@ -80,9 +81,7 @@ public final class LuckPermsCompat {
 
         // Parse by applying the color to a single probe character and then reading it back.
         String probe = s + "x";
-        Component c = MiniMessageComponentParser.looksLikeMiniMessage(s)
-                ? MiniMessageComponentParser.parse(probe)
-                : LegacyComponentParser.parse(probe);
+        Component c = FormattedTextCache.parse(FormattedTextCache.Mode.AUTO, probe, false);
 
         Integer rgb = firstRgbFromComponent(c);
         return rgb;
@@ -142,26 +141,7 @@ public final class LuckPermsCompat {
      */
     public static Boolean hasPermission(ServerPlayer player, String node) {
         if (player == null || node == null || node.isBlank()) return null;
-        try {
-            Object lp = getLuckPerms();
-            if (lp == null) return null;
-
-            Object userManager = lp.getClass().getMethod("getUserManager").invoke(lp);
-            Object user = userManager.getClass().getMethod("getUser", UUID.class).invoke(userManager, player.getUUID());
-            if (user == null) return null;
-
-            Object cachedData = user.getClass().getMethod("getCachedData").invoke(user);
-            Object permData = cachedData.getClass().getMethod("getPermissionData").invoke(cachedData);
-            Object tristate = permData.getClass().getMethod("checkPermission", String.class).invoke(permData, node);
-
-            // Tristate has asBoolean() in LuckPerms API
-            Method asBoolean = tristate.getClass().getMethod("asBoolean");
-            Object res = asBoolean.invoke(tristate);
-            if (res instanceof Boolean b) return b;
-            return null;
-        } catch (Throwable ignored) {
-            return null;
-        }
+        return bridge().permission(player.getUUID(), node);
     }
 
     /**
@@ -177,117 +157,319 @@ public final class LuckPermsCompat {
     }
 
     private static String getPrefixString(UUID uuid) {
-        try {
-            Object lp = getLuckPerms();
-            if (lp == null) return null;
+        return bridge().prefix(uuid);
+    }
 
-            Object userManager = lp.getClass().getMethod("getUserManager").invoke(lp);
-            Object user = userManager.getClass().getMethod("getUser", UUID.class).invoke(userManager, uuid);
-            if (user == null) {
-                return null;
-            }
+    // -------------------- API binding --------------------
 
-            Object metaData = getCachedMetaData(lp, user);
-            if (metaData == null) return null;
-            Object prefix = metaData.getClass().getMethod("getPrefix").invoke(metaData);
-            return prefix instanceof String s ? s : null;
-        } catch (Throwable ignored) {
+    /**
+     * The LuckPerms API surface we use. {@link #ABSENT} when LuckPerms is not installed,
+     * otherwise a {@link Bound} bridge whose method handles were resolved once.
+     */
+    private interface Bridge {
+        String prefix(UUID uuid);
+
+        /** First non-blank meta value among {@code keys} (one meta-data lookup for all keys). */
+        String metaValue(UUID uuid, String[] keys);
+
+        Boolean permission(UUID uuid, String node);
+    }
+
+    private static final Bridge ABSENT = new Bridge() {
+        @Override
+        public String prefix(UUID uuid) {
             return null;
         }
-    }
 
-    private static String getMetaValueString(UUID uuid, String key) {
-        if (uuid == null || key == null || key.isBlank()) return null;
-        try {
-            Object lp = getLuckPerms();
-            if (lp == null) return null;
+        @Override
+        public String metaValue(UUID uuid, String[] keys) {
+            return null;
+        }
 
-            Object userManager = lp.getClass().getMethod("getUserManager").invoke(lp);
-            Object user = userManager.getClass().getMethod("getUser", UUID.class).invoke(userManager, uuid);
-            if (user == null) return null;
+        @Override
+        public Boolean permission(UUID uuid, String node) {
+            return null;
+        }
+    };
 
-            Object metaData = getCachedMetaData(lp, user);
-            if (metaData == null) return null;
+    private static volatile Bridge bridge;
 
-            // LuckPerms API: CachedMetaData#getMetaValue(String)
-            Method m = metaData.getClass().getMethod("getMetaValue", String.class);
-            Object v = m.invoke(metaData, key);
-            return v instanceof String s ? s : null;
-        } catch (Throwable ignored) {
-            return null;
+    private static final List<Consumer<UUID>> USER_DATA_LISTENERS = new CopyOnWriteArrayList<>();
+    private static volatile boolean userDataEventsLive;
+
+    /**
+     * Resolves the LuckPerms API once (called on server start). Safe to call when LuckPerms is not installed.
+     */
+    public static void bind() {
+        Bridge b = resolveBridge();
+        bridge = b;
+        if (b != ABSENT) {
+            MultiChatMod.LOGGER.info("LuckPerms detected, using LuckPerms prefixes/meta/permissions");
         }
     }
 
+    /** Forgets the LuckPerms instance of the stopped server (handles stay bound). */
+    public static void unbind() {
+        if (bridge instanceof Bound b) b.lp = null;
+        userDataEventsLive = false;
+    }
+
+    /**
+     * Registers a callback for LuckPerms UserDataRecalculateEvent (a user's permissions/meta changed).
+     * Called from LuckPerms' own threads. Effective once {@link #subscribeUserDataEvents} succeeded.
+     */
+    public static void addUserDataListener(Consumer<UUID> listener) {
+        if (listener != null) USER_DATA_LISTENERS.add(listener);
+    }
+
     /**
-     * LuckPerms meta is contextual: a user can have different meta per server/world.
+     * Subscribes our listeners to the LuckPerms event bus (called once LP is up, on server started).
      *
-     * <p>We try to obtain QueryOptions from the ContextManager and then call CachedData#getMetaData(QueryOptions).
-     * If this API is not available in a given LP version, we fall back to CachedData#getMetaData().
+     * @return true if LuckPerms events are live.
      */
-    private static Object getCachedMetaData(Object lp, Object user) {
-        if (lp == null || user == null) return null;
+    public static boolean subscribeUserDataEvents() {
+        boolean live = bridge() instanceof Bound b && b.subscribeUserDataRecalculate();
+        userDataEventsLive = live;
+        return live;
+    }
+
+    /** True if {@link #addUserDataListener} callbacks are currently driven by LuckPerms events. */
+    public static boolean userDataEventsLive() {
+        return userDataEventsLive;
+    }
+
+    private static void fireUserDataRecalculated(UUID uuid) {
+        for (Consumer<UUID> l : USER_DATA_LISTENERS) {
+            try {
+                l.accept(uuid);
+            } catch (Throwable t) {
+                MultiChatMod.LOGGER.warn("LuckPerms user data listener failed", t);
+            }
+        }
+    }
+
+    public static boolean isPresent() {
+        return bridge() != ABSENT;
+    }
+
+    private static Bridge bridge() {
+        Bridge b = bridge;
+        if (b == null) {
+            b = resolveBridge();
+            bridge = b;
+        }
+        return b;
+    }
+
+    private static Bridge resolveBridge() {
         try {
-            Object cachedData = user.getClass().getMethod("getCachedData").invoke(user);
+            return new Bound();
+        } catch (Throwable ignored) {
+            return ABSENT;
+        }
+    }
 
-            // Try contextual QueryOptions: lp.getContextManager().getQueryOptions(user)
-            Object queryOptions = null;
+    private static final class Bound implements Bridge {
+        private final MethodHandle providerGet;
+        private final MethodHandle getUserManager;
+        private final MethodHandle getUser;
+        private final MethodHandle getCachedData;
+        private final MethodHandle getPermissionData;
+        private final MethodHandle checkPermission;
+        private final MethodHandle tristateAsBoolean;
+        private final MethodHandle getContextManager;
+        /** ContextManager#getQueryOptions(User); null if this LP version has none. */
+        private final MethodHandle getQueryOptions;
+        /** CachedDataManager#getMetaData(QueryOptions); null if this LP version has none. */
+        private final MethodHandle getMetaDataContextual;
+        private final MethodHandle getMetaData;
+        private final MethodHandle metaGetPrefix;
+        private final MethodHandle metaGetValue;
+
+        /** LuckPerms instance; looked up lazily because LP registers its API during server start. */
+        volatile Object lp;
+        /** LuckPerms instance our event listener is registered with. */
+        private Object subscribedTo;
+
+        Bound() throws ReflectiveOperationException {
+            ClassLoader cl = LuckPermsCompat.class.getClassLoader();
+            Class<?> provider = Class.forName("net.luckperms.api.LuckPermsProvider", false, cl);
+            Class<?> luckPerms = Class.forName("net.luckperms.api.LuckPerms", false, cl);
+            Class<?> userManager = Class.forName("net.luckperms.api.model.user.UserManager", false, cl);
+            Class<?> user = Class.forName("net.luckperms.api.model.user.User", false, cl);
+            Class<?> cachedData = Class.forName("net.luckperms.api.cacheddata.CachedDataManager", false, cl);
+            Class<?> permData = Class.forName("net.luckperms.api.cacheddata.CachedPermissionData", false, cl);
+            Class<?> metaData = Class.forName("net.luckperms.api.cacheddata.CachedMetaData", false, cl);
+            Class<?> tristate = Class.forName("net.luckperms.api.util.Tristate", false, cl);
+            Class<?> contextManager = Class.forName("net.luckperms.api.context.ContextManager", false, cl);
+
+            providerGet = LOOKUP.unreflect(provider.getMethod("get"));
+            getUserManager = LOOKUP.unreflect(luckPerms.getMethod("getUserManager"));
+            getUser = LOOKUP.unreflect(userManager.getMethod("getUser", UUID.class));
+            getCachedData = LOOKUP.unreflect(user.getMethod("getCachedData"));
+            getPermissionData = LOOKUP.unreflect(cachedData.getMethod("getPermissionData"));
+            checkPermission = LOOKUP.unreflect(permData.getMethod("checkPermission", String.class));
+            tristateAsBoolean = LOOKUP.unreflect(tristate.getMethod("asBoolean"));
+            getContextManager = LOOKUP.unreflect(luckPerms.getMethod("getContextManager"));
+            getMetaData = LOOKUP.unreflect(cachedData.getMethod("getMetaData"));
+            metaGetPrefix = LOOKUP.unreflect(metaData.getMethod("getPrefix"));
+            metaGetValue = LOOKUP.unreflect(metaData.getMethod("getMetaValue", String.class));
+
+            // LuckPerms API differs a bit between versions. We locate getQueryOptions(User) by name, once.
+            Method qo = null;
+            for (Method m : contextManager.getMethods()) {
+                if (!m.getName().equals("getQueryOptions")) continue;
+                if (m.getParameterCount() != 1) continue;
+                if (!m.getParameterTypes()[0].isAssignableFrom(user)) continue;
+                qo = m;
+                break;
+            }
+            getQueryOptions = qo == null ? null : LOOKUP.unreflect(qo);
+
+            MethodHandle metaQ = null;
             try {
-                Object ctxMgr = lp.getClass().getMethod("getContextManager").invoke(lp);
-
-                // LuckPerms API differs a bit between versions. We locate getQueryOptions(...) by name.
-                Method getQueryOptions = null;
-                for (Method m : ctxMgr.getClass().getMethods()) {
-                    if (!m.getName().equals("getQueryOptions")) continue;
-                    if (m.getParameterCount() != 1) continue;
-                    getQueryOptions = m;
-                    break;
+                Class<?> queryOptions = Class.forName("net.luckperms.api.query.QueryOptions", false, cl);
+                metaQ = LOOKUP.unreflect(cachedData.getMethod("getMetaData", queryOptions));
+            } catch (ReflectiveOperationException ignored) {
+            }
+            getMetaDataContextual = metaQ;
+        }
+
+        private Object lp() {
+            Object l = lp;
+            if (l == null) {
+                try {
+                    l = providerGet.invoke();
+                    lp = l;
+                } catch (Throwable ignored) {
+                    // LuckPerms not loaded yet.
+                    return null;
                 }
+            }
+            return l;
+        }
 
-                if (getQueryOptions != null) {
+        synchronized boolean subscribeUserDataRecalculate() {
+            Object l = lp();
+            if (l == null) return false;
+            if (subscribedTo == l) return true;
+            try {
+                ClassLoader cl = LuckPermsCompat.class.getClassLoader();
+                Class<?> luckPerms = Class.forName("net.luckperms.api.LuckPerms", false, cl);
+                Class<?> eventBus = Class.forName("net.luckperms.api.event.EventBus", false, cl);
+                Class<?> event = Class.forName("net.luckperms.api.event.user.UserDataRecalculateEvent", false, cl);
+                Class<?> user = Class.forName("net.luckperms.api.model.user.User", false, cl);
+
+                MethodHandle eventUser = LOOKUP.unreflect(event.getMethod("getUser"));
+                MethodHandle uniqueId = LOOKUP.unreflect(user.getMethod("getUniqueId"));
+                Consumer<Object> handler = e -> {
+                    try {
+                        Object u = eventUser.invoke(e);
+                        if (u != null && uniqueId.invoke(u) instanceof UUID id) fireUserDataRecalculated(id);
+                    } catch (Throwable ignored) {
+                    }
+                };
+
+                Object bus = luckPerms.getMethod("getEventBus").invoke(l);
+                eventBus.getMethod("subscribe", Class.class, Consumer.class).invoke(bus, event, handler);
+                subscribedTo = l;
+                return true;
+            } catch (Throwable t) {
+                MultiChatMod.LOGGER.warn("Could not subscribe to LuckPerms UserDataRecalculateEvent, using TTL-only caches", t);
+                return false;
+            }
+        }
+
+        private Object user(Object lp, UUID uuid) throws Throwable {
+            Object um = getUserManager.invoke(lp);
+            return um == null ? null : getUser.invoke(um, uuid);
+        }
+
+        @Override
+        public String prefix(UUID uuid) {
+            try {
+                Object l = lp();
+                if (l == null || uuid == null) return null;
+                Object u = user(l, uuid);
+                if (u == null) return null;
+                Object meta = metaData(l, u);
+                if (meta == null) return null;
+                return metaGetPrefix.invoke(meta) instanceof String str ? str : null;
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
+
+        @Override
+        public String metaValue(UUID uuid, String[] keys) {
+            try {
+                Object l = lp();
+                if (l == null || uuid == null) return null;
+                Object u = user(l, uuid);
+                if (u == null) return null;
+                Object meta = metaData(l, u);
+                if (meta == null) return null;
+                for (String key : keys) {
+                    // LuckPerms API: CachedMetaData#getMetaValue(String)
+                    if (metaGetValue.invoke(meta, key) instanceof String str && !str.isBlank()) return str;
+                }
+                return null;
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
+
+        @Override
+        public Boolean permission(UUID uuid, String node) {
+            try {
+                Object l = lp();
+                if (l == null) return null;
+                Object u = user(l, uuid);
+                if (u == null) return null;
+                Object cached = getCachedData.invoke(u);
+                Object perm = getPermissionData.invoke(cached);
+                Object tri = checkPermission.invoke(perm, node);
+                // Tristate has asBoolean() in LuckPerms API
+                return tri == null ? null : (Boolean) tristateAsBoolean.invoke(tri);
+            } catch (Throwable ignored) {
+                return null;
+            }
+        }
+
+        /**
+         * LuckPerms meta is contextual: a user can have different meta per server/world.
+         *
+         * <p>We try to obtain QueryOptions from the ContextManager and then call CachedData#getMetaData(QueryOptions).
+         * If this API is not available in a given LP version, we fall back to CachedData#getMetaData().
+         */
+        private Object metaData(Object lp, Object user) throws Throwable {
+            Object cached = getCachedData.invoke(user);
+            if (cached == null) return null;
+
+            if (getQueryOptions != null && getMetaDataContextual != null) {
+                Object queryOptions = null;
+                try {
+                    Object ctxMgr = getContextManager.invoke(lp);
                     Object res = getQueryOptions.invoke(ctxMgr, user);
-                    if (res instanceof CompletableFuture<?> cf) {
+                    if (res instanceof Optional<?> opt) {
+                        queryOptions = opt.orElse(null);
+                    } else if (res instanceof CompletableFuture<?> cf) {
                         // Join is fine here: LP keeps this completed for online users.
                         queryOptions = cf.getNow(null);
                         if (queryOptions == null) queryOptions = cf.join();
                     } else {
                         queryOptions = res;
                     }
+                } catch (Throwable ignored) {
+                    queryOptions = null;
                 }
-            } catch (Throwable ignored) {
-                queryOptions = null;
-            }
-
-            if (queryOptions != null) {
-                try {
-                    Method m = cachedData.getClass().getMethod("getMetaData", queryOptions.getClass());
-                    return m.invoke(cachedData, queryOptions);
-                } catch (NoSuchMethodException ignored) {
-                    // Method signature may be getMetaData(net.luckperms.api.query.QueryOptions)
-                    for (Method m : cachedData.getClass().getMethods()) {
-                        if (!m.getName().equals("getMetaData")) continue;
-                        Class<?>[] params = m.getParameterTypes();
-                        if (params.length != 1) continue;
-                        if (params[0].isInstance(queryOptions) || params[0].isAssignableFrom(queryOptions.getClass())) {
-                            return m.invoke(cachedData, queryOptions);
-                        }
-                    }
+                if (queryOptions != null) {
+                    return getMetaDataContextual.invoke(cached, queryOptions);
                 }
             }
 
             // Fallback: non-contextual
-            return cachedData.getClass().getMethod("getMetaData").invoke(cachedData);
-        } catch (Throwable ignored) {
-            return null;
-        }
-    }
-
-    private static Object getLuckPerms() {
-        try {
-            Class<?> provider = Class.forName("net.luckperms.api.LuckPermsProvider");
-            Method get = provider.getMethod("get");
-            return get.invoke(null);
-        } catch (Throwable ignored) {
-            return null;
+            return getMetaData.invoke(cached);
         }
     }
 }
@@ -1,10 +1,16 @@
 package com.roften.multichat.compat;
 
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
 import net.minecraft.network.chat.MutableComponent;
+import net.minecraft.network.chat.Style;
+import net.minecraft.network.chat.TextColor;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Iterator;
 import java.util.List;
@@ -15,359 +21,418 @@ import java.util.Map;
  * Dependency-free MiniMessage subset parser.
  *
  * <p>LuckPerms prefixes are often MiniMessage, e.g. {@code <red><bold>Admin</bold></red>}.
- * NeoForge servers do not ship Kyori Adventure by default, so we implement a small subset
- * and convert it into legacy codes, which are then parsed by {@link LegacyComponentParser}.
+ * NeoForge servers do not ship Kyori Adventure by default, so we implement a small subset.
+ * The input is scanned once: tags update a {@link Style} stack and the text between tags is
+ * handed to {@link LegacyComponentParser} (so {@code &c}/{@code #RRGGBB} keep working inside
+ * MiniMessage), which emits the styled runs directly.</p>
+ *
+ * <p>{@code <click>}, {@code <hover:show_text>} and {@code <insertion>} are applied only when the
+ * caller allows interactive tags (server-defined prefixes); in player-typed text they are stripped.</p>
  */
 public final class MiniMessageComponentParser {
     private MiniMessageComponentParser() {}
 
-    private static final Map<String, String> COLOR_TAG_TO_LEGACY = Map.ofEntries(
-            Map.entry("black", "§0"),
-            Map.entry("dark_blue", "§1"),
-            Map.entry("dark_green", "§2"),
-            Map.entry("dark_aqua", "§3"),
-            Map.entry("dark_red", "§4"),
-            Map.entry("dark_purple", "§5"),
-            Map.entry("gold", "§6"),
-            Map.entry("gray", "§7"),
-            Map.entry("grey", "§7"),
-            Map.entry("dark_gray", "§8"),
-            Map.entry("dark_grey", "§8"),
-            Map.entry("blue", "§9"),
-            Map.entry("green", "§a"),
-            Map.entry("aqua", "§b"),
-            Map.entry("red", "§c"),
-            Map.entry("light_purple", "§d"),
-            Map.entry("yellow", "§e"),
-            Map.entry("white", "§f")
+    /** Gradients nested deeper than this (or hover text inside hover text) are not expanded. */
+    private static final int MAX_DEPTH = 4;
+
+    private static final int[] RAINBOW_STOPS = {0xFF0000, 0xFFFF00, 0x00FF00, 0x00FFFF, 0x0000FF, 0xFF00FF};
+
+    private static final Map<String, ChatFormatting> COLOR_TAGS = Map.ofEntries(
+            Map.entry("black", ChatFormatting.BLACK),
+            Map.entry("dark_blue", ChatFormatting.DARK_BLUE),
+            Map.entry("dark_green", ChatFormatting.DARK_GREEN),
+            Map.entry("dark_aqua", ChatFormatting.DARK_AQUA),
+            Map.entry("dark_red", ChatFormatting.DARK_RED),
+            Map.entry("dark_purple", ChatFormatting.DARK_PURPLE),
+            Map.entry("gold", ChatFormatting.GOLD),
+            Map.entry("gray", ChatFormatting.GRAY),
+            Map.entry("grey", ChatFormatting.GRAY),
+            Map.entry("dark_gray", ChatFormatting.DARK_GRAY),
+            Map.entry("dark_grey", ChatFormatting.DARK_GRAY),
+            Map.entry("blue", ChatFormatting.BLUE),
+            Map.entry("green", ChatFormatting.GREEN),
+            Map.entry("aqua", ChatFormatting.AQUA),
+            Map.entry("red", ChatFormatting.RED),
+            Map.entry("light_purple", ChatFormatting.LIGHT_PURPLE),
+            Map.entry("yellow", ChatFormatting.YELLOW),
+            Map.entry("white", ChatFormatting.WHITE)
     );
 
-    private static final Map<String, String> DECORATION_TAG_TO_LEGACY = Map.ofEntries(
-            Map.entry("bold", "§l"),
-            Map.entry("b", "§l"),
-            Map.entry("italic", "§o"),
-            Map.entry("i", "§o"),
-            Map.entry("underlined", "§n"),
-            Map.entry("underline", "§n"),
-            Map.entry("u", "§n"),
-            Map.entry("strikethrough", "§m"),
-            Map.entry("st", "§m"),
-            Map.entry("obfuscated", "§k"),
-            Map.entry("magic", "§k"),
-            Map.entry("k", "§k"),
-            Map.entry("reset", "§r"),
-            Map.entry("r", "§r")
+    private static final Map<String, ChatFormatting> DECORATION_TAGS = Map.ofEntries(
+            Map.entry("bold", ChatFormatting.BOLD),
+            Map.entry("b", ChatFormatting.BOLD),
+            Map.entry("italic", ChatFormatting.ITALIC),
+            Map.entry("i", ChatFormatting.ITALIC),
+            Map.entry("underlined", ChatFormatting.UNDERLINE),
+            Map.entry("underline", ChatFormatting.UNDERLINE),
+            Map.entry("u", ChatFormatting.UNDERLINE),
+            Map.entry("strikethrough", ChatFormatting.STRIKETHROUGH),
+            Map.entry("st", ChatFormatting.STRIKETHROUGH),
+            Map.entry("obfuscated", ChatFormatting.OBFUSCATED),
+            Map.entry("magic", ChatFormatting.OBFUSCATED),
+            Map.entry("k", ChatFormatting.OBFUSCATED)
     );
 
-    private static final class State {
-        // "§c" or "§#RRGGBB"
-        String color = null;
-        boolean bold, italic, underlined, strikethrough, obfuscated;
-
-        State copy() {
-            State s = new State();
-            s.color = this.color;
-            s.bold = this.bold;
-            s.italic = this.italic;
-            s.underlined = this.underlined;
-            s.strikethrough = this.strikethrough;
-            s.obfuscated = this.obfuscated;
-            return s;
-        }
+    private record Frame(String tag, Style prev) {}
 
-        String toLegacyCodes() {
-            StringBuilder sb = new StringBuilder();
-            if (color != null) sb.append(color);
-            if (obfuscated) sb.append("§k");
-            if (bold) sb.append("§l");
-            if (strikethrough) sb.append("§m");
-            if (underlined) sb.append("§n");
-            if (italic) sb.append("§o");
-            return sb.toString();
-        }
+    /** Gradient color resolution per RGB channel, see {@link #configureGradients}. */
+    private static volatile int gradientColorStep = 4;
+    /** Upper bound of differently colored pieces per gradient. */
+    private static volatile int gradientMaxSegments = 16;
 
-        void resetAll() {
-            color = null;
-            bold = italic = underlined = strikethrough = obfuscated = false;
-        }
+    /**
+     * Applied on config load. Already parsed (cached) text keeps its old colors until
+     * {@link FormattedTextCache} is cleared.
+     */
+    public static void configureGradients(int colorStep, int maxSegments) {
+        gradientColorStep = Math.max(1, colorStep);
+        gradientMaxSegments = Math.max(1, maxSegments);
     }
 
-    private static final class Frame {
-        final String tag;
-        final State prev;
-
-        Frame(String tag, State prev) {
-            this.tag = tag;
-            this.prev = prev;
-        }
+    /**
+     * Parses player-typed text: interactive tags are stripped.
+     */
+    public static MutableComponent parse(String input) {
+        return parse(input, false);
     }
 
-    public static MutableComponent parse(String input) {
+    /**
+     * @param allowInteractive apply click/hover/insertion tags (only for trusted text such as LuckPerms prefixes)
+     */
+    public static MutableComponent parse(String input, boolean allowInteractive) {
         if (input == null || input.isEmpty()) {
             return Component.empty();
         }
+        ComponentRunBuilder out = new ComponentRunBuilder();
+        parseInto(out, input, 0, input.length(), Style.EMPTY, allowInteractive, 0);
+        return out.build();
+    }
 
-        // Expand common LuckPerms MiniMessage gradients/rainbow into legacy-friendly per-character hex tokens.
-        // We keep this dependency-free and intentionally support only the simple, non-nested forms
-        // that are typical for prefixes.
-        input = expandGradientsAndRainbow(input);
+    /**
+     * Heuristic for AUTO detection.
+     */
+    public static boolean looksLikeMiniMessage(String s) {
+        if (s == null) return false;
+        int lt = s.indexOf('<');
+        int gt = s.indexOf('>');
+        return lt >= 0 && gt > lt;
+    }
 
-        StringBuilder out = new StringBuilder(input.length() + 16);
+    /**
+     * Parses {@code in[from, to)} into {@code out}, starting from {@code base}.
+     */
+    private static void parseInto(ComponentRunBuilder out, String in, int from, int to, Style base,
+                                  boolean interactive, int depth) {
         Deque<Frame> stack = new ArrayDeque<>();
-        State cur = new State();
+        Style cur = base;
+        int textStart = from;
+        int i = from;
 
-        int i = 0;
-        while (i < input.length()) {
-            char ch = input.charAt(i);
-
-            if (ch == '<') {
-                int gt = input.indexOf('>', i + 1);
-                if (gt == -1) {
-                    out.append(ch);
-                    i++;
-                    continue;
+        while (i < to) {
+            if (in.charAt(i) != '<') {
+                i++;
+                continue;
+            }
+            int gt = findTagEnd(in, i + 1, to);
+            if (gt < 0) break;
+
+            // Text before the tag (legacy codes inside are honored).
+            cur = LegacyComponentParser.appendLegacy(out, in, textStart, i, cur);
+
+            String raw = in.substring(i + 1, gt).trim();
+            i = gt + 1;
+            textStart = i;
+            if (raw.isEmpty()) continue;
+
+            // closing tag: restore the style from before the matching (innermost) open tag
+            if (raw.charAt(0) == '/') {
+                String closeName = raw.substring(1).trim().toLowerCase(Locale.ROOT);
+                Frame match = null;
+                Iterator<Frame> it = stack.descendingIterator();
+                while (it.hasNext()) {
+                    Frame f = it.next();
+                    if (f.tag().equals(closeName)) {
+                        match = f;
+                        break;
+                    }
+                }
+                if (match != null) {
+                    while (!stack.isEmpty()) {
+                        if (stack.removeLast() == match) break;
+                    }
+                    cur = match.prev();
                 }
+                continue;
+            }
 
-                String raw = input.substring(i + 1, gt).trim();
-                i = gt + 1;
+            List<String> args = splitArgs(raw);
+            String tagName = args.get(0).toLowerCase(Locale.ROOT);
 
-                if (raw.isEmpty()) continue;
+            if (tagName.equals("br")) {
+                out.append("\n", cur);
+                continue;
+            }
+            // tags we do not render (no frame: their closing tag is ignored too)
+            if (tagName.equals("font") || tagName.equals("lang")
+                    || tagName.equals("transition") || tagName.equals("new")) {
+                continue;
+            }
 
-                // closing tag
-                if (raw.startsWith("/")) {
-                    String closeName = raw.substring(1).trim().toLowerCase(Locale.ROOT);
-                    Frame match = null;
-                    Iterator<Frame> it = stack.iterator();
-                    while (it.hasNext()) {
-                        Frame f = it.next();
-                        if (f.tag.equals(closeName)) match = f;
-                    }
-                    if (match != null) {
-                        while (!stack.isEmpty()) {
-                            Frame top = stack.removeLast();
-                            if (top == match) break;
-                        }
-                        cur = match.prev.copy();
-                        out.append("§r").append(cur.toLegacyCodes());
+            if ((tagName.equals("gradient") || tagName.equals("rainbow")) && depth < MAX_DEPTH) {
+                int close = findClose(in, i, to, tagName);
+                if (close >= 0) {
+                    int[] stops = tagName.equals("rainbow") ? RAINBOW_STOPS : parseStops(args);
+                    ComponentRunBuilder inner = new ComponentRunBuilder();
+                    parseInto(inner, in, i, close, cur, interactive, depth + 1);
+                    if (stops.length >= 2) {
+                        appendGradient(out, inner, stops);
+                    } else {
+                        for (int r = 0; r < inner.runCount(); r++) out.append(inner.text(r), inner.style(r));
                     }
+                    i = findTagEnd(in, close + 1, to) + 1;
+                    textStart = i;
                     continue;
                 }
+            }
 
-                String tagName = raw;
-                String args = null;
-                int colon = raw.indexOf(':');
-                if (colon >= 0) {
-                    tagName = raw.substring(0, colon).trim();
-                    args = raw.substring(colon + 1).trim();
-                }
-                tagName = tagName.toLowerCase(Locale.ROOT);
+            // save state for restoration on closing tag
+            stack.addLast(new Frame(tagName, cur));
+            cur = applyTag(tagName, args, cur, interactive, depth);
+        }
 
-                // strip non-style tags (keep basic linebreak)
-                if (tagName.equals("click") || tagName.equals("hover") || tagName.equals("insertion")
-                        || tagName.equals("font") || tagName.equals("lang")
-                        || tagName.equals("transition") || tagName.equals("new")) {
-                    continue;
-                }
-                if (tagName.equals("br")) {
-                    out.append("\n");
-                    continue;
-                }
+        LegacyComponentParser.appendLegacy(out, in, textStart, to, cur);
+    }
 
-                // save state for restoration on closing tag
-                stack.addLast(new Frame(tagName, cur.copy()));
+    private static Style applyTag(String tagName, List<String> args, Style cur, boolean interactive, int depth) {
+        if (tagName.equals("reset") || tagName.equals("r")) {
+            return Style.EMPTY;
+        }
 
-                if (tagName.equals("reset") || tagName.equals("r")) {
-                    cur.resetAll();
-                    out.append("§r");
-                    continue;
-                }
+        // hex <#RRGGBB>
+        TextColor hex = parseColor(tagName);
+        if (hex != null && tagName.startsWith("#")) {
+            return withColorResetDecorations(cur, hex);
+        }
 
-                // hex <#RRGGBB>
-                if (tagName.startsWith("#") && tagName.length() == 7 && isHex6(tagName.substring(1))) {
-                    cur.color = "§#" + tagName.substring(1);
-                    // vanilla behavior: decorations reset on color change
-                    cur.bold = cur.italic = cur.underlined = cur.strikethrough = cur.obfuscated = false;
-                    out.append(cur.color);
-                    continue;
-                }
+        // <color:#RRGGBB> or <color:red>
+        if ((tagName.equals("color") || tagName.equals("colour") || tagName.equals("c")) && args.size() > 1) {
+            TextColor c = parseColor(args.get(1).toLowerCase(Locale.ROOT));
+            return c == null ? cur : withColorResetDecorations(cur, c);
+        }
 
-                // <color:#RRGGBB> or <color:red>
-                if (tagName.equals("color") && args != null) {
-                    String a = args.trim().toLowerCase(Locale.ROOT);
-                    if (a.startsWith("#") && a.length() == 7 && isHex6(a.substring(1))) {
-                        cur.color = "§#" + a.substring(1);
-                        cur.bold = cur.italic = cur.underlined = cur.strikethrough = cur.obfuscated = false;
-                        out.append(cur.color);
-                        continue;
-                    }
-                    String legacy = COLOR_TAG_TO_LEGACY.get(a);
-                    if (legacy != null) {
-                        cur.color = legacy;
-                        cur.bold = cur.italic = cur.underlined = cur.strikethrough = cur.obfuscated = false;
-                        out.append(legacy);
-                        continue;
-                    }
-                }
+        // named color tag
+        ChatFormatting named = COLOR_TAGS.get(tagName);
+        if (named != null) {
+            return withColorResetDecorations(cur, TextColor.fromLegacyFormat(named));
+        }
 
-                // named color tag
-                String legacyColor = COLOR_TAG_TO_LEGACY.get(tagName);
-                if (legacyColor != null) {
-                    cur.color = legacyColor;
-                    cur.bold = cur.italic = cur.underlined = cur.strikethrough = cur.obfuscated = false;
-                    out.append(legacyColor);
-                    continue;
-                }
+        ChatFormatting dec = DECORATION_TAGS.get(tagName);
+        if (dec != null) {
+            return cur.applyFormat(dec);
+        }
 
-                // decoration tag
-                String legacyDec = DECORATION_TAG_TO_LEGACY.get(tagName);
-                if (legacyDec != null) {
-                    switch (legacyDec) {
-                        case "§l" -> cur.bold = true;
-                        case "§o" -> cur.italic = true;
-                        case "§n" -> cur.underlined = true;
-                        case "§m" -> cur.strikethrough = true;
-                        case "§k" -> cur.obfuscated = true;
-                        default -> {
-                        }
-                    }
-                    out.append(legacyDec);
-                    continue;
-                }
+        if (!interactive) return cur;
 
+        switch (tagName) {
+            case "click" -> {
+                if (args.size() < 3) return cur;
+                ClickEvent.Action action = clickAction(args.get(1));
+                return action == null ? cur : cur.withClickEvent(new ClickEvent(action, joinFrom(args, 2)));
+            }
+            case "hover" -> {
+                if (args.size() < 3 || !args.get(1).equalsIgnoreCase("show_text") || depth >= MAX_DEPTH) return cur;
+                MutableComponent text = Component.empty();
+                ComponentRunBuilder hoverRuns = new ComponentRunBuilder();
+                String value = joinFrom(args, 2);
+                parseInto(hoverRuns, value, 0, value.length(), Style.EMPTY, true, depth + 1);
+                text.append(hoverRuns.build());
+                return cur.withHoverEvent(new HoverEvent(HoverEvent.Action.SHOW_TEXT, text));
+            }
+            case "insertion" -> {
+                if (args.size() < 2) return cur;
+                String value = joinFrom(args, 1);
+                // Our own routing markers live in insertions; never let formatted text forge them.
+                if (value.startsWith("avilixchat:")) return cur;
+                return cur.withInsertion(value);
+            }
+            default -> {
                 // unknown tag -> ignore (will restore on close if present)
-                continue;
+                return cur;
             }
-
-            out.append(ch);
-            i++;
         }
+    }
 
-        Component parsed = LegacyComponentParser.parse(out.toString());
-        return parsed.copy();
+    private static Style withColorResetDecorations(Style cur, TextColor color) {
+        // vanilla behavior: decorations reset on color change
+        return cur.withColor(color).withBold(false).withItalic(false).withUnderlined(false)
+                .withStrikethrough(false).withObfuscated(false);
     }
 
-    /**
-     * Heuristic for AUTO detection.
-     */
-    public static boolean looksLikeMiniMessage(String s) {
-        if (s == null) return false;
-        int lt = s.indexOf('<');
-        int gt = s.indexOf('>');
-        return lt >= 0 && gt > lt;
+    private static ClickEvent.Action clickAction(String name) {
+        return switch (name.toLowerCase(Locale.ROOT)) {
+            case "open_url" -> ClickEvent.Action.OPEN_URL;
+            case "run_command" -> ClickEvent.Action.RUN_COMMAND;
+            case "suggest_command" -> ClickEvent.Action.SUGGEST_COMMAND;
+            case "copy_to_clipboard" -> ClickEvent.Action.COPY_TO_CLIPBOARD;
+            case "change_page" -> ClickEvent.Action.CHANGE_PAGE;
+            default -> null;
+        };
     }
 
-    private static boolean isHex6(String s) {
-        if (s.length() != 6) return false;
-        for (int i = 0; i < s.length(); i++) {
-            char c = s.charAt(i);
-            boolean ok = (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
-            if (!ok) return false;
+    /**
+     * Index of the {@code '>'} closing a tag opened before {@code from}, skipping quoted arguments
+     * ({@code <hover:show_text:'a > b'>}). Falls back to the first {@code '>'} if quotes are unbalanced.
+     */
+    private static int findTagEnd(String in, int from, int to) {
+        char quote = 0;
+        for (int i = from; i < to; i++) {
+            char c = in.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '>') {
+                return i;
+            }
         }
-        return true;
+        int gt = in.indexOf('>', from);
+        return gt >= 0 && gt < to ? gt : -1;
     }
 
     /**
-     * Expands simple (non-nested) MiniMessage gradients/rainbow into per-character plain hex tokens.
-     *
-     * Supported:
-     * - <gradient:#RRGGBB:#RRGGBB>Text</gradient>
-     * - <gradient:#RRGGBB:#RRGGBB:#RRGGBB>Text</gradient> (multi-stop)
-     * - <rainbow>Text</rainbow>
-     *
-     * This is intentionally minimal and geared toward LuckPerms prefix strings.
+     * Start of the closing tag that matches a {@code tagName} tag opened before {@code from}, or -1.
+     * Same-name tags in between nest ({@code <gradient>..<gradient>..</gradient>..</gradient>}); names
+     * compare case-insensitively, like everywhere else in the parser.
      */
-    private static String expandGradientsAndRainbow(String input) {
-        if (input == null || input.isEmpty()) return input;
-
-        String s = input;
-
-        // Expand gradients
-        int safety = 0;
-        while (s.contains("<gradient") && safety++ < 32) {
-            int open = s.indexOf("<gradient");
-            int gt = s.indexOf('>', open);
-            if (open < 0 || gt < 0) break;
-
-            int close = s.indexOf("</gradient>", gt);
-            if (close < 0) break;
-
-            String header = s.substring(open + 1, gt).trim(); // gradient:...
-            String inner = s.substring(gt + 1, close);
-
-            // Parse args: gradient:... or gradient ...
-            String args = null;
-            int colon = header.indexOf(':');
-            if (colon >= 0) args = header.substring(colon + 1).trim();
-
-            List<Integer> stops = new ArrayList<>();
-            if (args != null && !args.isBlank()) {
-                for (String part : args.split(":")) {
-                    String p = part.trim();
-                    if (p.startsWith("#") && p.length() == 7 && isHex6(p.substring(1))) {
-                        stops.add(Integer.parseInt(p.substring(1), 16));
-                    }
-                }
+    private static int findClose(String in, int from, int to, String tagName) {
+        int depth = 1;
+        int i = from;
+        while (i < to) {
+            int lt = in.indexOf('<', i);
+            if (lt < 0 || lt >= to) return -1;
+            int gt = findTagEnd(in, lt + 1, to);
+            if (gt < 0) return -1;
+            String raw = in.substring(lt + 1, gt).trim();
+            i = gt + 1;
+            if (raw.isEmpty()) continue;
+
+            if (raw.charAt(0) == '/') {
+                if (raw.substring(1).trim().equalsIgnoreCase(tagName) && --depth == 0) return lt;
+            } else {
+                int colon = raw.indexOf(':');
+                String name = colon < 0 ? raw : raw.substring(0, colon);
+                if (name.trim().equalsIgnoreCase(tagName)) depth++;
             }
+        }
+        return -1;
+    }
 
-            String expanded = inner;
-            if (stops.size() >= 2) {
-                // Strip other tags inside the gradient region to avoid breaking formatting.
-                String plain = inner.replaceAll("<[^>]+>", "");
-                expanded = applyMultiStopGradientPlainHex(plain, stops);
+    /** Splits {@code name:arg:'quoted:arg'} on colons outside quotes and unquotes the parts. */
+    private static List<String> splitArgs(String raw) {
+        List<String> out = new ArrayList<>(4);
+        StringBuilder cur = new StringBuilder();
+        char quote = 0;
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (quote != 0) {
+                if (c == quote) quote = 0;
+                else cur.append(c);
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == ':') {
+                out.add(cur.toString().trim());
+                cur.setLength(0);
+            } else {
+                cur.append(c);
             }
-
-            s = s.substring(0, open) + expanded + s.substring(close + "</gradient>".length());
         }
+        out.add(cur.toString().trim());
+        return out;
+    }
 
-        // Expand rainbow
-        safety = 0;
-        while (s.contains("<rainbow") && safety++ < 32) {
-            int open = s.indexOf("<rainbow");
-            int gt = s.indexOf('>', open);
-            if (open < 0 || gt < 0) break;
-            int close = s.indexOf("</rainbow>", gt);
-            if (close < 0) break;
-
-            String inner = s.substring(gt + 1, close);
-            String plain = inner.replaceAll("<[^>]+>", "");
-            String expanded = applyRainbowPlainHex(plain);
+    /** Remaining arguments re-joined, so unquoted values like {@code https://...} survive. */
+    private static String joinFrom(List<String> args, int from) {
+        if (args.size() == from + 1) return args.get(from);
+        return String.join(":", args.subList(from, args.size()));
+    }
 
-            s = s.substring(0, open) + expanded + s.substring(close + "</rainbow>".length());
+    private static TextColor parseColor(String s) {
+        if (s.length() == 7 && s.charAt(0) == '#') {
+            int rgb = LegacyComponentParser.hex6(s, 1, 7);
+            return rgb < 0 ? null : TextColor.fromRgb(rgb);
         }
+        ChatFormatting named = COLOR_TAGS.get(s);
+        return named == null ? null : TextColor.fromLegacyFormat(named);
+    }
 
-        return s;
+    private static int[] parseStops(List<String> args) {
+        int[] stops = new int[Math.max(0, args.size() - 1)];
+        int n = 0;
+        for (int k = 1; k < args.size(); k++) {
+            TextColor c = parseColor(args.get(k).toLowerCase(Locale.ROOT));
+            if (c != null) stops[n++] = c.getValue();
+        }
+        return n == stops.length ? stops : Arrays.copyOf(stops, n);
     }
 
-    private static String applyMultiStopGradientPlainHex(String text, List<Integer> stops) {
-        if (text.isEmpty()) return text;
-        StringBuilder sb = new StringBuilder(text.length() * 9);
-        int n = text.length();
-        for (int i = 0; i < n; i++) {
-            double t = (n == 1) ? 0.0 : (double) i / (double) (n - 1);
-            int rgb = sampleMultiStop(stops, t);
-            sb.append('#').append(String.format("%06X", rgb));
-            sb.append(text.charAt(i));
+    /**
+     * Re-emits already parsed runs colored from the gradient stops.
+     * Decorations, click/hover etc. of the inner runs are kept.
+     *
+     * <p>The text is split into at most {@link #gradientMaxSegments} equal segments and each color is
+     * rounded to {@link #gradientColorStep}; neighbouring characters that end up with the same color
+     * share one component instead of one component per character.</p>
+     */
+    private static void appendGradient(ComponentRunBuilder out, ComponentRunBuilder inner, int[] stops) {
+        int n = 0;
+        for (int r = 0; r < inner.runCount(); r++) {
+            String t = inner.text(r);
+            n += t.codePointCount(0, t.length());
+        }
+        if (n == 0) return;
+
+        int segments = Math.min(n, gradientMaxSegments);
+        int step = gradientColorStep;
+
+        int idx = 0;
+        for (int r = 0; r < inner.runCount(); r++) {
+            String t = inner.text(r);
+            Style style = inner.style(r);
+            int runStart = 0;
+            int runColor = -1;
+            for (int k = 0; k < t.length(); ) {
+                int seg = (int) ((long) idx * segments / n);
+                double pos = (segments == 1) ? 0.0 : (double) seg / (double) (segments - 1);
+                int rgb = quantize(sampleMultiStop(stops, pos), step);
+                if (rgb != runColor) {
+                    if (runColor >= 0) out.append(t, runStart, k, style.withColor(TextColor.fromRgb(runColor)));
+                    runStart = k;
+                    runColor = rgb;
+                }
+                k += Character.charCount(t.codePointAt(k));
+                idx++;
+            }
+            if (runColor >= 0) out.append(t, runStart, t.length(), style.withColor(TextColor.fromRgb(runColor)));
         }
-        return sb.toString();
     }
 
-    private static String applyRainbowPlainHex(String text) {
-        if (text.isEmpty()) return text;
-        // Simple 6-stop rainbow.
-        int[] stops = new int[]{0xFF0000, 0xFFFF00, 0x00FF00, 0x00FFFF, 0x0000FF, 0xFF00FF};
-        List<Integer> list = new ArrayList<>();
-        for (int c : stops) list.add(c);
-        return applyMultiStopGradientPlainHex(text, list);
+    /** Rounds each channel to a multiple of {@code step} (1 = exact colors). */
+    private static int quantize(int rgb, int step) {
+        if (step <= 1) return rgb;
+        int r = Math.min(255, ((((rgb >> 16) & 0xFF) + step / 2) / step) * step);
+        int g = Math.min(255, ((((rgb >> 8) & 0xFF) + step / 2) / step) * step);
+        int b = Math.min(255, (((rgb & 0xFF) + step / 2) / step) * step);
+        return (r << 16) | (g << 8) | b;
     }
 
-    private static int sampleMultiStop(List<Integer> stops, double t) {
-        if (stops.size() == 1) return stops.get(0);
+    private static int sampleMultiStop(int[] stops, double t) {
+        if (stops.length == 1) return stops[0];
         t = Math.max(0.0, Math.min(1.0, t));
-        double scaled = t * (stops.size() - 1);
+        double scaled = t * (stops.length - 1);
         int idx = (int) Math.floor(scaled);
-        if (idx >= stops.size() - 1) return stops.get(stops.size() - 1);
+        if (idx >= stops.length - 1) return stops[stops.length - 1];
         double localT = scaled - idx;
-        return lerpRgb(stops.get(idx), stops.get(idx + 1), localT);
+        return lerpRgb(stops[idx], stops[idx + 1], localT);
     }
 
     private static int lerpRgb(int a, int b, double t) {
@@ -378,5 +443,4 @@ public final class MiniMessageComponentParser {
         int rb = (int) Math.round(ab + (bb - ab) * t);
         return (rr << 16) | (rg << 8) | rb;
     }
-
 }
@@ -1,70 +1,239 @@
 package com.roften.multichat.compat;
 
+import com.roften.multichat.MultiChatMod;
 import net.minecraft.server.MinecraftServer;
 import net.minecraft.server.level.ServerPlayer;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Stream;
 
 /**
  * Optional integration with "Open Parties and Claims" (OPaC).
  * Uses reflection against the official OPaC API.
+ *
+ * <p>API discovery is done once per server ({@link #bind}, called on server start; lazily on first use
+ * otherwise) and the resolved methods are kept as {@link MethodHandle}s. Party membership is cached per
+ * player UUID for a few seconds and dropped whenever someone joins or leaves, so CLAN routing is
+ * normally a map lookup.</p>
  */
 public final class OpenPacCompat {
     private OpenPacCompat() {}
 
+    private static final String API_CLASS = "xaero.pac.common.server.api.OpenPACServerAPI";
+
+    /** OPaC has no public party-change event we can hook, so membership is re-read after this long. */
+    private static final long MEMBERSHIP_TTL_NANOS = 5_000_000_000L;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+
+    /** Resolved API entry points; {@link #UNAVAILABLE} if OPaC is absent or its API is not recognized. */
+    private record Bindings(MethodHandle apiGet, MethodHandle getPartyManager,
+                            MethodHandle partyByMember, boolean partyByUuid) {}
+
+    private static final Bindings UNAVAILABLE = new Bindings(null, null, null, false);
+
+    private static volatile Bindings bindings;
+    /** Party manager of the running server (resolved on first use after {@link #bind}). */
+    private static volatile Object partyManager;
+
     /**
-     * @return null if OPaC is not present or its API cannot be called. Otherwise returns a list of online party members.
+     * Online member ids of each player's party (a solo player maps to just themselves).
+     *
+     * @param partyId null for a player without a party (or if the party has no readable id)
      */
-    @SuppressWarnings("unchecked")
-    public static List<ServerPlayer> tryGetPartyOnlineMembers(ServerPlayer sender) {
-        try {
-            Class<?> apiClass = Class.forName("xaero.pac.common.server.api.OpenPACServerAPI");
-            Object api = getApiInstance(apiClass, sender.server);
-            if (api == null) {
+    private record CachedParty(UUID partyId, List<UUID> onlineMembers, long expiresNanos) {}
+
+    private static final Map<UUID, CachedParty> MEMBERSHIP = new ConcurrentHashMap<>();
+
+    /** getId() per concrete party class. */
+    private static final ClassValue<MethodHandle> PARTY_ID = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return LOOKUP.unreflect(type.getMethod("getId"));
+            } catch (Throwable t) {
                 return null;
             }
+        }
+    };
 
-            Object partyManager = api.getClass().getMethod("getPartyManager").invoke(api);
-            if (partyManager == null) {
+    /** getOnlineMemberStream() per concrete party class. */
+    private static final ClassValue<MethodHandle> ONLINE_MEMBERS = new ClassValue<>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return LOOKUP.unreflect(type.getMethod("getOnlineMemberStream"));
+            } catch (Throwable t) {
                 return null;
             }
+        }
+    };
 
-            Object party = getPartyForMember(partyManager, sender);
-            if (party == null) {
-                return List.of(sender);
+    /**
+     * Resolves the OPaC API once for this server. Safe to call when OPaC is not installed.
+     */
+    public static void bind() {
+        partyManager = null;
+        MEMBERSHIP.clear();
+        bindings = resolveBindings();
+        if (bindings != UNAVAILABLE) {
+            MultiChatMod.LOGGER.info("Open Parties and Claims detected, CLAN chat uses party membership");
+        }
+    }
+
+    public static void unbind() {
+        partyManager = null;
+        MEMBERSHIP.clear();
+    }
+
+    /** Drops cached membership (online sets change when players join/leave). */
+    public static void invalidate() {
+        MEMBERSHIP.clear();
+    }
+
+    /**
+     * @return null if OPaC is not present or its API cannot be called. Otherwise returns a list of online party members.
+     */
+    public static List<ServerPlayer> tryGetPartyOnlineMembers(ServerPlayer sender) {
+        CachedParty cached = cachedParty(sender);
+        if (cached == null) return null;
+
+        List<ServerPlayer> out = new ArrayList<>(cached.onlineMembers().size());
+        for (UUID id : cached.onlineMembers()) {
+            ServerPlayer p = sender.server.getPlayerList().getPlayer(id);
+            if (p != null) out.add(p);
+        }
+        if (out.isEmpty()) {
+            out.add(sender);
+        }
+        return out;
+    }
+
+    /**
+     * Stable key of the player's party ({@code "party:<id>"}), or null if OPaC is absent or the player
+     * is not in a party. Shares the membership cache with {@link #tryGetPartyOnlineMembers}.
+     */
+    public static String partyKey(ServerPlayer player) {
+        CachedParty cached = cachedParty(player);
+        return cached == null || cached.partyId() == null ? null : "party:" + cached.partyId();
+    }
+
+    private static CachedParty cachedParty(ServerPlayer sender) {
+        Bindings b = bindings;
+        if (b == null) {
+            b = resolveBindings();
+            bindings = b;
+        }
+        if (b == UNAVAILABLE) return null;
+
+        long now = System.nanoTime();
+        CachedParty cached = MEMBERSHIP.get(sender.getUUID());
+        if (cached == null || now - cached.expiresNanos() > 0) {
+            cached = lookup(b, sender, now);
+        }
+        return cached;
+    }
+
+    private static CachedParty lookup(Bindings b, ServerPlayer sender, long now) {
+        try {
+            Object pm = partyManager;
+            if (pm == null) {
+                Object api = b.apiGet().invoke(sender.server);
+                if (api == null) return null;
+                pm = b.getPartyManager().invoke(api);
+                if (pm == null) return null;
+                partyManager = pm;
             }
 
-            Method onlineStreamMethod = party.getClass().getMethod("getOnlineMemberStream");
-            Object streamObj = onlineStreamMethod.invoke(party);
-            if (!(streamObj instanceof Stream<?> stream)) {
-                return null;
+            Object party = b.partyByMember().invoke(pm, b.partyByUuid() ? sender.getUUID() : sender);
+            long expires = now + MEMBERSHIP_TTL_NANOS;
+            if (party == null) {
+                CachedParty solo = new CachedParty(null, List.of(sender.getUUID()), expires);
+                MEMBERSHIP.put(sender.getUUID(), solo);
+                return solo;
             }
 
-            List<ServerPlayer> out = new ArrayList<>();
+            MethodHandle online = ONLINE_MEMBERS.get(party.getClass());
+            if (online == null) return null;
+            if (!(online.invoke(party) instanceof Stream<?> stream)) return null;
+
+            List<UUID> ids = new ArrayList<>();
             stream.forEach(o -> {
-                if (o instanceof ServerPlayer sp) {
-                    out.add(sp);
-                }
+                if (o instanceof ServerPlayer sp) ids.add(sp.getUUID());
             });
-            if (out.isEmpty()) {
-                out.add(sender);
-            }
-            return out;
+            if (ids.isEmpty()) ids.add(sender.getUUID());
+
+            MethodHandle getId = PARTY_ID.get(party.getClass());
+            UUID partyId = getId != null && getId.invoke(party) instanceof UUID id ? id : null;
+
+            // One lookup serves the whole party.
+            CachedParty result = new CachedParty(partyId, List.copyOf(ids), expires);
+            for (UUID id : result.onlineMembers()) MEMBERSHIP.put(id, result);
+            MEMBERSHIP.put(sender.getUUID(), result);
+            return result;
         } catch (Throwable ignored) {
             return null;
         }
     }
 
-    private static Object getApiInstance(Class<?> apiClass, MinecraftServer server) throws Exception {
+    private static Bindings resolveBindings() {
+        try {
+            Class<?> apiClass = Class.forName(API_CLASS);
+            Method apiGet = findApiGetter(apiClass);
+            if (apiGet == null) return UNAVAILABLE;
+
+            Method getPartyManager = apiClass.getMethod("getPartyManager");
+            Class<?> managerType = getPartyManager.getReturnType();
+
+            // Prefer UUID-keyed getters, then player-keyed ones, then a safe scan.
+            Method byMember = findGetter(managerType, UUID.class, new String[]{
+                    "getPartyByMember",
+                    "getPartyForMember",
+                    "getPartyOfMember",
+                    "getPartyByMemberUUID",
+                    "findPartyForMember",
+                    "findPartyByMember"
+            });
+            boolean byUuid = byMember != null;
+            if (byMember == null) {
+                byMember = findGetter(managerType, ServerPlayer.class, new String[]{
+                        "getPartyForMember",
+                        "getPartyByMember",
+                        "getPartyOfMember",
+                        "getPartyForPlayer",
+                        "getPartyByPlayer",
+                        "findPartyForMember",
+                        "findPartyByMember"
+                });
+            }
+            if (byMember == null) {
+                byMember = scanPartyGetter(managerType, UUID.class);
+                byUuid = byMember != null;
+            }
+            if (byMember == null) {
+                byMember = scanPartyGetter(managerType, ServerPlayer.class);
+            }
+            if (byMember == null) return UNAVAILABLE;
+
+            return new Bindings(LOOKUP.unreflect(apiGet), LOOKUP.unreflect(getPartyManager), LOOKUP.unreflect(byMember), byUuid);
+        } catch (Throwable ignored) {
+            return UNAVAILABLE;
+        }
+    }
+
+    private static Method findApiGetter(Class<?> apiClass) {
         // Try the common API pattern: static get(MinecraftServer)
         try {
-            Method m = apiClass.getMethod("get", MinecraftServer.class);
-            return m.invoke(null, server);
+            return apiClass.getMethod("get", MinecraftServer.class);
         } catch (NoSuchMethodException ignored) {
             // Try other reasonable names without failing hard.
         }
@@ -73,7 +242,7 @@ public final class OpenPacCompat {
             if (!Modifier.isStatic(m.getModifiers())) continue;
             if (m.getParameterCount() == 1 && m.getParameterTypes()[0].isAssignableFrom(MinecraftServer.class)) {
                 if (apiClass.isAssignableFrom(m.getReturnType())) {
-                    return m.invoke(null, server);
+                    return m;
                 }
             }
         }
@@ -83,65 +252,37 @@ public final class OpenPacCompat {
     /**
      * IMPORTANT: this must be a SAFE getter.
      *
-     * The previous implementation searched for ANY method name containing "party" and 1 param,
+     * An older implementation searched for ANY method name containing "party" and 1 param,
      * which can accidentally call mutators like "leaveParty(UUID)" and remove the player from the party.
      */
-    private static Object getPartyForMember(Object partyManager, ServerPlayer sender) throws Exception {
-        UUID uuid = sender.getUUID();
-
-        // 1) Try common getter-like names (UUID).
-        Object party = tryInvokeGetter(partyManager, uuid,
-                new String[]{
-                        "getPartyForMember",
-                        "getPartyByMember",
-                        "getPartyOfMember",
-                        "getPartyByMemberUUID",
-                        "findPartyForMember",
-                        "findPartyByMember"
-                });
-        if (party != null) return party;
+    private static Method findGetter(Class<?> type, Class<?> argType, String[] candidateNames) {
+        for (String name : candidateNames) {
+            for (Method m : type.getMethods()) {
+                if (!m.getName().equalsIgnoreCase(name)) continue;
+                if (m.getParameterCount() != 1) continue;
+                if (!isSafePartyReturnType(m.getReturnType())) continue;
+                if (!m.getParameterTypes()[0].isAssignableFrom(argType)) continue;
+                return m;
+            }
+        }
+        return null;
+    }
 
-        // 2) Try common getter-like names (player).
-        party = tryInvokeGetter(partyManager, sender,
-                new String[]{
-                        "getPartyForMember",
-                        "getPartyByMember",
-                        "getPartyOfMember",
-                        "getPartyForPlayer",
-                        "getPartyByPlayer",
-                        "findPartyForMember",
-                        "findPartyByMember"
-                });
-        if (party != null) return party;
-
-        // 3) Fallback: safe scan for methods that LOOK like getters.
-        // Only consider methods that:
-        // - contain both "get" (or "find") and "party"
-        // - have exactly 1 parameter that we can pass (UUID or ServerPlayer)
-        // - return a non-primitive, non-boolean, non-void type
-        for (Method m : partyManager.getClass().getMethods()) {
-            String n = m.getName().toLowerCase();
+    /**
+     * Fallback: methods that LOOK like getters. Only considers methods that:
+     * - contain both "get" (or "find") and "party"
+     * - have exactly 1 parameter that we can pass (UUID or ServerPlayer)
+     * - return a non-primitive, non-boolean, non-void type
+     */
+    private static Method scanPartyGetter(Class<?> type, Class<?> argType) {
+        for (Method m : type.getMethods()) {
+            String n = m.getName().toLowerCase(Locale.ROOT);
             if (!(n.contains("party") && (n.contains("get") || n.contains("find")))) continue;
             if (m.getParameterCount() != 1) continue;
             if (!isSafePartyReturnType(m.getReturnType())) continue;
-
-            Class<?> p = m.getParameterTypes()[0];
-            try {
-                if (p.isAssignableFrom(UUID.class)) {
-                    Object res = m.invoke(partyManager, uuid);
-                    if (res != null) return res;
-                }
-            } catch (Throwable ignored) {
-            }
-            try {
-                if (p.isAssignableFrom(sender.getClass())) {
-                    Object res = m.invoke(partyManager, sender);
-                    if (res != null) return res;
-                }
-            } catch (Throwable ignored) {
-            }
+            if (!m.getParameterTypes()[0].isAssignableFrom(argType)) continue;
+            return m;
         }
-
         return null;
     }
 
@@ -152,27 +293,4 @@ public final class OpenPacCompat {
         if (ret == Boolean.class) return false;
         return true;
     }
-
-    private static Object tryInvokeGetter(Object target, Object arg, String[] candidateNames) {
-        if (target == null || arg == null || candidateNames == null) return null;
-
-        for (String name : candidateNames) {
-            if (name == null || name.isBlank()) continue;
-            for (Method m : target.getClass().getMethods()) {
-                if (!m.getName().equalsIgnoreCase(name)) continue;
-                if (m.getParameterCount() != 1) continue;
-                if (!isSafePartyReturnType(m.getReturnType())) continue;
-
-                Class<?> p = m.getParameterTypes()[0];
-                if (!p.isAssignableFrom(arg.getClass())) continue;
-
-                try {
-                    Object res = m.invoke(target, arg);
-                    if (res != null) return res;
-                } catch (Throwable ignored) {
-                }
-            }
-        }
-        return null;
-    }
 }
@@ -1,6 +1,7 @@
 package com.roften.multichat.compat;
 
 import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.server.OnlinePlayerIndex;
 import net.minecraft.network.chat.ClickEvent;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.Style;
@@ -81,26 +82,14 @@ public final class XaeroWaypointShareCompat {
     /**
      * Attempts to find the sharer by matching any online player name
      * against the message visible string or the first RUN_COMMAND value.
+     * Uses the shared online-name automaton (single pass per text, no per-player scan).
      */
     public static ServerPlayer findSharer(MinecraftServer server, Component message) {
         if (server == null || message == null) return null;
 
         String plain = message.getString();
-        if (plain == null) plain = "";
-        String plainLower = plain.toLowerCase(Locale.ROOT);
-
         String cmd = firstCommandValue(message);
-        String cmdLower = cmd == null ? "" : cmd.toLowerCase(Locale.ROOT);
-
-        for (ServerPlayer p : server.getPlayerList().getPlayers()) {
-            String name = p.getGameProfile().getName();
-            if (name == null || name.isBlank()) continue;
-            String n = name.toLowerCase(Locale.ROOT);
-            if (plainLower.contains(n) || cmdLower.contains(n)) {
-                return p;
-            }
-        }
-        return null;
+        return OnlinePlayerIndex.findFirstOccurring(server, plain, cmd);
     }
 
     /**
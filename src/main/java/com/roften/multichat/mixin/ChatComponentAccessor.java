@@ -0,0 +1,31 @@
+package com.roften.multichat.mixin;
+
+import net.minecraft.client.GuiMessage;
+import net.minecraft.client.gui.components.ChatComponent;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Mutable;
+import org.spongepowered.asm.mixin.gen.Accessor;
+
+import java.util.List;
+
+/**
+ * Client-only: lets the per-tab line cache swap the chat's message lists instead of clearing and
+ * re-adding every message on tab switch (see TabLineCache).
+ */
+@Mixin(ChatComponent.class)
+public interface ChatComponentAccessor {
+
+    @Accessor("allMessages")
+    List<GuiMessage> multichat$getAllMessages();
+
+    @Mutable
+    @Accessor("allMessages")
+    void multichat$setAllMessages(List<GuiMessage> messages);
+
+    @Accessor("trimmedMessages")
+    List<GuiMessage.Line> multichat$getTrimmedMessages();
+
+    @Mutable
+    @Accessor("trimmedMessages")
+    void multichat$setTrimmedMessages(List<GuiMessage.Line> lines);
+}
@@ -274,7 +274,7 @@ public abstract class ChatScreenMixin {
         }
     }
 
-    // NOTE: CLAN chat is routed on the server by executing /opm when the CLAN channel is selected.
+    // NOTE: CLAN chat is routed on the server (directly, or by executing /opm in OPM clan delivery mode).
     // The client must NOT rewrite /opm into normal chat text; players should still be able to use
     // /opm as a real command.
 
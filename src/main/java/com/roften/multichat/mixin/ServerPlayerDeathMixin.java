@@ -4,9 +4,9 @@ import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.MultiChatMod;
 import com.roften.multichat.admin.AdminChatState;
 import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.server.ChatFormats;
 import com.roften.multichat.chat.server.DeathMessageDeduper;
 import com.roften.multichat.db.ChatLogDatabase;
-import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
 import net.minecraft.network.chat.MutableComponent;
 import net.minecraft.server.MinecraftServer;
@@ -17,8 +17,6 @@ import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Redirect;
 
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -28,7 +26,6 @@ import java.util.stream.Collectors;
  */
 @Mixin(ServerPlayer.class)
 public abstract class ServerPlayerDeathMixin {
-    private static final DateTimeFormatter TIME_FMT = DateTimeFormatter.ofPattern("HH:mm:ss");
 
     @Redirect(
             method = "die",
@@ -64,12 +61,7 @@ public abstract class ServerPlayerDeathMixin {
 
         // Keep the vanilla death component formatting (player names, team colors, hover/click, etc.).
         // If we apply a flat GRAY style here, it will override inner styles and the report will look "flat".
-        String ts = LocalTime.now().format(TIME_FMT);
-        MutableComponent out = Component.literal("[" + ts + "]").withStyle(ChatFormatting.DARK_GRAY)
-                .append(Component.literal(" "))
-                .append(ChatChannel.LOCAL.channelBadge())
-                .append(Component.literal(" "))
-                .append(message.copy());
+        MutableComponent out = ChatFormats.deathLine(ChatChannel.LOCAL, message);
 
         // Send without mixin-based system logging duplication.
         ChatLogDatabase.runWithoutMixinSystemLogging(() -> {
@@ -78,11 +70,7 @@ public abstract class ServerPlayerDeathMixin {
             }
 
             // Always deliver a copy into ADMIN tab (even if /spy is disabled).
-            MutableComponent adminOut = Component.literal("[" + ts + "]").withStyle(ChatFormatting.DARK_GRAY)
-                    .append(Component.literal(" "))
-                    .append(ChatChannel.ADMIN.channelBadge())
-                    .append(Component.literal(" "))
-                    .append(message.copy());
+            MutableComponent adminOut = ChatFormats.deathLine(ChatChannel.ADMIN, message);
 
             Component marked = AdminChatState.markAdminMirror(adminOut);
             for (ServerPlayer p : server.getPlayerList().getPlayers()) {
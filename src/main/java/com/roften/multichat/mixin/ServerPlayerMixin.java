@@ -2,6 +2,7 @@ package com.roften.multichat.mixin;
 
 import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.server.OutboundChat;
 import com.roften.multichat.chat.server.ServerActiveChannelState;
 import com.roften.multichat.compat.XaeroWaypointCompat;
 import com.roften.multichat.compat.XaeroWaypointShareCompat;
@@ -25,6 +26,9 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * Logs system/mod messages that are sent to a single player via sendSystemMessage(...).
  *
+ * Chat lines still queued for the player (OutboundChat) are sent first, so a notice or command
+ * feedback never shows up before the lines that led to it.
+ *
  * Additionally, we handle Xaero waypoint share lines here because some Xaero builds send them
  * per-recipient (ServerPlayer#sendSystemMessage) and others broadcast them.
  *
@@ -46,6 +50,7 @@ public abstract class ServerPlayerMixin {
 
     @Inject(method = "sendSystemMessage(Lnet/minecraft/network/chat/Component;)V", at = @At("HEAD"), cancellable = true, require = 0)
     private void multichat$sendSystemMessage_head(Component message, CallbackInfo ci) {
+        OutboundChat.flush((ServerPlayer) (Object) this);
         if (handleWaypointShare(message, false, false)) {
             ci.cancel();
             return;
@@ -55,6 +60,8 @@ public abstract class ServerPlayerMixin {
 
     @Inject(method = "sendSystemMessage(Lnet/minecraft/network/chat/Component;Z)V", at = @At("HEAD"), cancellable = true, require = 0)
     private void multichat$sendSystemMessageOverlay_head(Component message, boolean overlay, CallbackInfo ci) {
+        // Action bar messages are not ordered against chat lines.
+        if (!overlay) OutboundChat.flush((ServerPlayer) (Object) this);
         if (handleWaypointShare(message, true, overlay)) {
             ci.cancel();
             return;
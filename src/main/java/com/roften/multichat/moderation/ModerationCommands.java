@@ -5,6 +5,7 @@ import com.mojang.brigadier.exceptions.SimpleCommandExceptionType;
 import com.mojang.brigadier.suggestion.SuggestionProvider;
 import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.chat.server.OnlinePlayerIndex;
 import com.roften.multichat.compat.LuckPermsCompat;
 import net.minecraft.ChatFormatting;
 import net.minecraft.commands.CommandSourceStack;
@@ -220,7 +221,7 @@ public final class ModerationCommands {
 
         // Если не нашли по UUID — попробуем по имени
         if (online == null && name != null) {
-            online = server.getPlayerList().getPlayerByName(name);
+            online = OnlinePlayerIndex.byName(server, name);
             if (online != null && uuid == null) {
                 uuid = online.getUUID();
             }
@@ -312,7 +313,7 @@ public final class ModerationCommands {
         ServerPlayer online = null;
 
         if (uuid != null) online = server.getPlayerList().getPlayer(uuid);
-        if (online == null && name != null) online = server.getPlayerList().getPlayerByName(name);
+        if (online == null && name != null) online = OnlinePlayerIndex.byName(server, name);
 
         if (uuid == null) uuid = offlineUuid(name != null ? name : "unknown");
         if (name == null || name.isBlank()) name = online != null ? online.getGameProfile().getName() : "(unknown)";
@@ -320,7 +321,7 @@ public final class ModerationCommands {
     }
 
     private static Target resolveTarget(MinecraftServer server, String name) {
-        ServerPlayer online = (name == null) ? null : server.getPlayerList().getPlayerByName(name);
+        ServerPlayer online = (name == null) ? null : OnlinePlayerIndex.byName(server, name);
         UUID uuid = (online != null) ? online.getUUID() : offlineUuid(name != null ? name : "unknown");
         String fixedName = (online != null) ? online.getGameProfile().getName() : (name != null ? name : "(unknown)");
         return new Target(uuid, fixedName, online);
@@ -331,11 +332,7 @@ public final class ModerationCommands {
     }
 
     private static final SuggestionProvider<CommandSourceStack> ONLY_PLAYER_NAMES = (ctx, b) -> {
-        var names = ctx.getSource().getServer().getPlayerList().getPlayers()
-                .stream()
-                .map(p -> p.getGameProfile().getName())
-                .sorted(String.CASE_INSENSITIVE_ORDER)
-                .toList();
-        return SharedSuggestionProvider.suggest(names, b); // без @a, @e и т.п.
+        // Уже отсортировано индексом онлайна, без пересборки списка на каждый ввод.
+        return SharedSuggestionProvider.suggest(OnlinePlayerIndex.sortedNames(), b); // без @a, @e и т.п.
     };
 }
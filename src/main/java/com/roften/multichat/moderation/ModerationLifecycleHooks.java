@@ -9,7 +9,7 @@ import net.neoforged.neoforge.event.server.ServerStoppingEvent;
 import net.minecraft.server.level.ServerPlayer;
 
 /**
- * Initializes mute system and performs auto-unmute checks on login.
+ * Initializes mute system, performs auto-unmute checks on login and drops cached permission decisions.
  */
 @EventBusSubscriber(modid = MultiChatMod.MODID)
 public final class ModerationLifecycleHooks {
@@ -23,6 +23,7 @@ public final class ModerationLifecycleHooks {
     @SubscribeEvent
     public static void onServerStopping(ServerStoppingEvent event) {
         MuteManager.shutdown();
+        PermissionCache.clear();
     }
 
     @SubscribeEvent
@@ -31,4 +32,10 @@ public final class ModerationLifecycleHooks {
         // Trigger expiry check
         MuteManager.isMuted(player);
     }
+
+    @SubscribeEvent
+    public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
+        if (!(event.getEntity() instanceof ServerPlayer player)) return;
+        PermissionCache.invalidate(player.getUUID());
+    }
 }
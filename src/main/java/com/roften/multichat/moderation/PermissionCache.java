@@ -0,0 +1,105 @@
+package com.roften.multichat.moderation;
+
+import com.roften.multichat.compat.LuckPermsCompat;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-player cache of permission decisions made by {@link Perms}.
+ *
+ * <p>Nodes are interned to small int ids, so a lookup is one map get by UUID plus an array read.
+ * Entries are dropped when LuckPerms recalculates a user's data (UserDataRecalculateEvent, subscribed
+ * reflectively on server start). Vanilla op levels have no such event, and LuckPerms may be absent,
+ * so every decision also expires after a TTL: long when events are live, short otherwise.</p>
+ */
+public final class PermissionCache {
+    private PermissionCache() {}
+
+    private static final long TTL_WITH_EVENTS_NANOS = 60_000_000_000L;
+    private static final long TTL_WITHOUT_EVENTS_NANOS = 5_000_000_000L;
+
+    private static final Map<String, Integer> NODE_IDS = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_NODE_ID = new AtomicInteger();
+
+    private static final Map<UUID, Decisions> BY_PLAYER = new ConcurrentHashMap<>();
+
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+
+    static {
+        LuckPermsCompat.addUserDataListener(PermissionCache::invalidate);
+    }
+
+    /** Small, stable id for a permission node (nodes are a handful of constants). */
+    public static int nodeId(String node) {
+        Integer id = NODE_IDS.get(node);
+        if (id != null) return id;
+        return NODE_IDS.computeIfAbsent(node, n -> NEXT_NODE_ID.getAndIncrement());
+    }
+
+    /**
+     * @return cached decision, or null if unknown/expired (counted as a miss).
+     */
+    static Boolean get(UUID player, int nodeId) {
+        Decisions d = BY_PLAYER.get(player);
+        Boolean v = d == null ? null : d.get(nodeId, System.nanoTime());
+        if (v == null) MISSES.increment();
+        else HITS.increment();
+        return v;
+    }
+
+    static void put(UUID player, int nodeId, boolean allowed) {
+        long ttl = LuckPermsCompat.userDataEventsLive() ? TTL_WITH_EVENTS_NANOS : TTL_WITHOUT_EVENTS_NANOS;
+        BY_PLAYER.computeIfAbsent(player, u -> new Decisions()).put(nodeId, allowed, System.nanoTime() + ttl);
+    }
+
+    /** Forgets all decisions for a player (LuckPerms data changed, or the player left). */
+    public static void invalidate(UUID player) {
+        if (player == null) return;
+        BY_PLAYER.remove(player);
+    }
+
+    public static void clear() {
+        BY_PLAYER.clear();
+    }
+
+    public static long hits() {
+        return HITS.sum();
+    }
+
+    public static long misses() {
+        return MISSES.sum();
+    }
+
+    /** Decisions of one player, indexed by node id. */
+    private static final class Decisions {
+        private static final byte UNKNOWN = 0;
+        private static final byte DENY = 1;
+        private static final byte ALLOW = 2;
+
+        private byte[] values = new byte[8];
+        private long[] expires = new long[8];
+
+        synchronized Boolean get(int nodeId, long now) {
+            if (nodeId >= values.length) return null;
+            byte v = values[nodeId];
+            if (v == UNKNOWN || now - expires[nodeId] > 0) return null;
+            return v == ALLOW;
+        }
+
+        synchronized void put(int nodeId, boolean allowed, long expiresAt) {
+            if (nodeId >= values.length) {
+                int n = Math.max(values.length * 2, nodeId + 1);
+                values = Arrays.copyOf(values, n);
+                expires = Arrays.copyOf(expires, n);
+            }
+            values[nodeId] = allowed ? ALLOW : DENY;
+            expires[nodeId] = expiresAt;
+        }
+    }
+}
@@ -16,11 +16,32 @@ public final class Perms {
         if (!(source.getEntity() instanceof ServerPlayer player)) {
             return source.hasPermission(MultiChatConfig.MUTE_REQUIRED_PERMISSION_LEVEL.getAsInt());
         }
+        return has(player, node);
+    }
+
+    /**
+     * Player permission check without building a command source. Decisions are cached per player
+     * (see {@link PermissionCache}), since this runs for every online player on every chat message.
+     */
+    public static boolean has(ServerPlayer player, String node) {
+        int nodeId = PermissionCache.nodeId(node);
+        Boolean cached = PermissionCache.get(player.getUUID(), nodeId);
+        if (cached != null) return cached;
 
         Boolean lp = LuckPermsCompat.hasPermission(player, node);
-        if (lp != null) {
-            return lp;
-        }
-        return source.hasPermission(MultiChatConfig.MUTE_REQUIRED_PERMISSION_LEVEL.getAsInt());
+        boolean allowed = lp != null
+                ? lp
+                : player.hasPermissions(MultiChatConfig.MUTE_REQUIRED_PERMISSION_LEVEL.getAsInt());
+        PermissionCache.put(player.getUUID(), nodeId, allowed);
+        return allowed;
+    }
+
+    /**
+     * Warms the decision cache from LuckPerms. Safe off the server thread; vanilla fallbacks are
+     * left to the regular {@link #has(ServerPlayer, String)} path.
+     */
+    public static void prefetch(ServerPlayer player, String node) {
+        Boolean lp = LuckPermsCompat.hasPermission(player, node);
+        if (lp != null) PermissionCache.put(player.getUUID(), PermissionCache.nodeId(node), lp);
     }
 }
@@ -0,0 +1,53 @@
+package com.roften.multichat.network;
+
+import com.roften.multichat.chat.client.ClientChatLines;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.ComponentSerialization;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * Server -> Client: defines a chat line layout (time, badge, prefix, name ... message) for one
+ * sender and channel. Following {@link ChatLinePacket}s refer to it by id.
+ *
+ * @param layout      the line with empty time/message slot markers
+ * @param timePattern server {@code chatTimeFormat} pattern
+ * @param zone        server time zone id
+ */
+public record ChatHeaderPacket(int id, Component layout, String timePattern, String zone) implements CustomPacketPayload {
+
+    public static final Type<ChatHeaderPacket> TYPE =
+            new Type<>(ResourceLocation.fromNamespaceAndPath("avilixchat", "chat_header"));
+
+    /** Longest time pattern / zone id on the wire; longer server patterns fall back to the default. */
+    public static final int MAX_PATTERN_LENGTH = 64;
+
+    public static final StreamCodec<RegistryFriendlyByteBuf, ChatHeaderPacket> STREAM_CODEC = new StreamCodec<>() {
+        @Override
+        public ChatHeaderPacket decode(RegistryFriendlyByteBuf buf) {
+            int id = buf.readVarInt();
+            Component layout = ComponentSerialization.TRUSTED_STREAM_CODEC.decode(buf);
+            return new ChatHeaderPacket(id, layout, buf.readUtf(MAX_PATTERN_LENGTH), buf.readUtf(MAX_PATTERN_LENGTH));
+        }
+
+        @Override
+        public void encode(RegistryFriendlyByteBuf buf, ChatHeaderPacket pkt) {
+            buf.writeVarInt(pkt.id);
+            ComponentSerialization.TRUSTED_STREAM_CODEC.encode(buf, pkt.layout);
+            buf.writeUtf(pkt.timePattern, MAX_PATTERN_LENGTH);
+            buf.writeUtf(pkt.zone, MAX_PATTERN_LENGTH);
+        }
+    };
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    public static void handle(final ChatHeaderPacket pkt, final IPayloadContext ctx) {
+        ctx.enqueueWork(() -> ClientChatLines.define(pkt.id, pkt.layout, pkt.timePattern, pkt.zone));
+    }
+}
@@ -0,0 +1,58 @@
+package com.roften.multichat.network;
+
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.client.ClientChatLines;
+import io.netty.handler.codec.DecoderException;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.ComponentSerialization;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+/**
+ * Server -> Client: a routed chat line as (channel, header id, time, message). The client fills the
+ * layout of {@link ChatHeaderPacket} {@code headerId} and shows it like a system message.
+ * Vanilla clients get the full line as a system message instead.
+ */
+public record ChatLinePacket(ChatChannel channel, int headerId, long tsMillis, Component message) implements CustomPacketPayload {
+
+    /** Insertion tokens of the empty slot markers in a header layout. */
+    public static final String TIME_SLOT = "avilixchat:slot=time";
+    public static final String MESSAGE_SLOT = "avilixchat:slot=message";
+
+    public static final Type<ChatLinePacket> TYPE =
+            new Type<>(ResourceLocation.fromNamespaceAndPath("avilixchat", "chat_line"));
+
+    public static final StreamCodec<RegistryFriendlyByteBuf, ChatLinePacket> STREAM_CODEC = new StreamCodec<>() {
+        @Override
+        public ChatLinePacket decode(RegistryFriendlyByteBuf buf) {
+            int ordinal = buf.readVarInt();
+            if (ordinal < 0 || ordinal >= ChatChannel.values().length) {
+                throw new DecoderException("Unknown chat channel " + ordinal);
+            }
+            ChatChannel ch = ChatChannel.values()[ordinal];
+            int id = buf.readVarInt();
+            long ts = buf.readLong();
+            return new ChatLinePacket(ch, id, ts, ComponentSerialization.TRUSTED_STREAM_CODEC.decode(buf));
+        }
+
+        @Override
+        public void encode(RegistryFriendlyByteBuf buf, ChatLinePacket pkt) {
+            buf.writeVarInt(pkt.channel.ordinal());
+            buf.writeVarInt(pkt.headerId);
+            buf.writeLong(pkt.tsMillis);
+            ComponentSerialization.TRUSTED_STREAM_CODEC.encode(buf, pkt.message);
+        }
+    };
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    public static void handle(final ChatLinePacket pkt, final IPayloadContext ctx) {
+        ctx.enqueueWork(() -> ClientChatLines.show(pkt.channel, pkt.headerId, pkt.tsMillis, pkt.message));
+    }
+}
@@ -0,0 +1,126 @@
+package com.roften.multichat.network;
+
+import com.roften.multichat.MultiChatMod;
+import com.roften.multichat.chat.ChatChannel;
+import com.roften.multichat.chat.client.ClientChatState;
+import io.netty.buffer.Unpooled;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.network.RegistryFriendlyByteBuf;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.ComponentSerialization;
+import net.minecraft.network.codec.StreamCodec;
+import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
+import net.minecraft.resources.ResourceLocation;
+import net.neoforged.neoforge.network.handling.IPayloadContext;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Server -> Client: one chunk of recent channel history sent after login (oldest first).
+ * The lines are deflate-compressed; see {@link #encode} / {@link #decode}.
+ */
+public record HistoryBackfillPacket(byte[] data) implements CustomPacketPayload {
+
+    /** One history line and the tab it belongs to. */
+    public record Line(ChatChannel channel, Component msg) {}
+
+    /** Upper bound for an inflated chunk; anything larger is dropped. */
+    private static final int MAX_INFLATED = 1 << 21;
+
+    public static final Type<HistoryBackfillPacket> TYPE =
+            new Type<>(ResourceLocation.fromNamespaceAndPath("avilixchat", "history_backfill"));
+
+    public static final StreamCodec<RegistryFriendlyByteBuf, HistoryBackfillPacket> STREAM_CODEC = new StreamCodec<>() {
+        @Override
+        public HistoryBackfillPacket decode(RegistryFriendlyByteBuf buf) {
+            return new HistoryBackfillPacket(buf.readByteArray());
+        }
+
+        @Override
+        public void encode(RegistryFriendlyByteBuf buf, HistoryBackfillPacket pkt) {
+            buf.writeByteArray(pkt.data);
+        }
+    };
+
+    @Override
+    public Type<? extends CustomPacketPayload> type() {
+        return TYPE;
+    }
+
+    /** Serializes and compresses a chunk of lines. */
+    public static HistoryBackfillPacket encode(List<Line> lines, RegistryAccess registries) {
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.buffer(), registries);
+        try {
+            buf.writeVarInt(lines.size());
+            for (Line l : lines) {
+                buf.writeByte(l.channel().ordinal());
+                ComponentSerialization.TRUSTED_STREAM_CODEC.encode(buf, l.msg());
+            }
+            byte[] raw = new byte[buf.readableBytes()];
+            buf.readBytes(raw);
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(raw);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+                byte[] tmp = new byte[4096];
+                while (!deflater.finished()) {
+                    out.write(tmp, 0, deflater.deflate(tmp));
+                }
+                return new HistoryBackfillPacket(out.toByteArray());
+            } finally {
+                deflater.end();
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    /** Inflates and deserializes the lines of this chunk. */
+    public List<Line> decode(RegistryAccess registries) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(data.length * 3);
+        try {
+            inflater.setInput(data);
+            byte[] tmp = new byte[4096];
+            while (!inflater.finished()) {
+                int n = inflater.inflate(tmp);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated history chunk");
+                }
+                raw.write(tmp, 0, n);
+                if (raw.size() > MAX_INFLATED) throw new DataFormatException("History chunk too large");
+            }
+        } finally {
+            inflater.end();
+        }
+
+        RegistryFriendlyByteBuf buf = new RegistryFriendlyByteBuf(Unpooled.wrappedBuffer(raw.toByteArray()), registries);
+        int n = buf.readVarInt();
+        List<Line> out = new ArrayList<>(Math.min(n, 1024));
+        ChatChannel[] channels = ChatChannel.values();
+        for (int i = 0; i < n; i++) {
+            int ch = buf.readByte();
+            Component msg = ComponentSerialization.TRUSTED_STREAM_CODEC.decode(buf);
+            if (ch >= 0 && ch < channels.length) out.add(new Line(channels[ch], msg));
+        }
+        return out;
+    }
+
+    public static void handle(final HistoryBackfillPacket pkt, final IPayloadContext ctx) {
+        ctx.enqueueWork(() -> {
+            try {
+                ClientChatState.backfill(pkt.decode(ctx.player().registryAccess()));
+            } catch (Throwable t) {
+                // History is a convenience; never disconnect over it.
+                MultiChatMod.LOGGER.warn("Ignoring malformed chat history chunk", t);
+            }
+        });
+    }
+}
@@ -10,11 +10,18 @@ import net.neoforged.neoforge.network.registration.PayloadRegistrar;
 public final class NetworkRegistration {
     private NetworkRegistration() {}
 
-    public static final String PROTOCOL = "2";
+    public static final String PROTOCOL = "5";
 
     public static void register(final RegisterPayloadHandlersEvent event) {
         final PayloadRegistrar registrar = event.registrar(MultiChatMod.MODID).versioned(PROTOCOL);
         registrar.playToClient(UiConfigSyncPacket.TYPE, UiConfigSyncPacket.STREAM_CODEC, UiConfigSyncPacket::handle);
         registrar.playToServer(ActiveChannelPacket.TYPE, ActiveChannelPacket.STREAM_CODEC, ActiveChannelPacket::handle);
+
+        // Optional: clients without them still connect; the server checks hasChannel and falls back to
+        // vanilla system messages (chat lines) or skips them (backfill).
+        final PayloadRegistrar optional = registrar.optional();
+        optional.playToClient(HistoryBackfillPacket.TYPE, HistoryBackfillPacket.STREAM_CODEC, HistoryBackfillPacket::handle);
+        optional.playToClient(ChatHeaderPacket.TYPE, ChatHeaderPacket.STREAM_CODEC, ChatHeaderPacket::handle);
+        optional.playToClient(ChatLinePacket.TYPE, ChatLinePacket.STREAM_CODEC, ChatLinePacket::handle);
     }
 }
@@ -12,6 +12,7 @@ import net.neoforged.neoforge.event.entity.player.PlayerEvent;
 import net.neoforged.neoforge.network.PacketDistributor;
 
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -28,19 +29,26 @@ public final class UiConfigSyncEvents {
         // Build payload from server config.
         Map<ChatChannel, String> labels = new EnumMap<>(ChatChannel.class);
         Map<ChatChannel, Integer> colors = new EnumMap<>(ChatChannel.class);
+        Map<ChatChannel, List<String>> aliases = new EnumMap<>(ChatChannel.class);
+        Map<ChatChannel, List<String>> letters = new EnumMap<>(ChatChannel.class);
         for (ChatChannel ch : ChatChannel.values()) {
             labels.put(ch, MultiChatConfig.getTabLabel(ch));
             colors.put(ch, MultiChatConfig.getTabRgb(ch));
+            // Client needs the server's selectors to tell an explicit channel prefix from plain text.
+            aliases.put(ch, List.copyOf(MultiChatConfig.CHAT_ALIASES.get(ch).get()));
+            letters.put(ch, List.copyOf(MultiChatConfig.SWITCH_LETTERS.get(ch).get()));
         }
 
         // ADMIN tab is only shown to players who have the LuckPerms node (or vanilla fallback).
-        boolean adminAllowed = Perms.has(sp.createCommandSourceStack(), AdminChatState.NODE_ADMIN_CHAT);
+        boolean adminAllowed = Perms.has(sp, AdminChatState.NODE_ADMIN_CHAT);
 
         UiConfigSyncPacket pkt = new UiConfigSyncPacket(
                 MultiChatConfig.UI_CHAT_SWITCH_KEY.get(),
                 labels,
                 colors,
-                adminAllowed
+                adminAllowed,
+                aliases,
+                letters
         );
         PacketDistributor.sendToPlayer(sp, pkt);
     }
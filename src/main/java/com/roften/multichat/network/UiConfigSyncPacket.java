@@ -1,5 +1,6 @@
 package com.roften.multichat.network;
 
+import com.roften.multichat.MultiChatConfig;
 import com.roften.multichat.chat.ChatChannel;
 import com.roften.multichat.client.ui.ClientUiConfig;
 import net.minecraft.network.RegistryFriendlyByteBuf;
@@ -9,17 +10,24 @@ import net.minecraft.network.protocol.common.custom.CustomPacketPayload;
 import net.minecraft.resources.ResourceLocation;
 import net.neoforged.neoforge.network.handling.IPayloadContext;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
 
 /**
  * Server -> Client UI settings sync.
+ *
+ * <p>Also carries the server's channel selectors ({@code chatSelectors.*}), so the client recognizes
+ * aliases that exist only in the server config and does not prefix them again.</p>
  */
 public record UiConfigSyncPacket(
         String switchKey,
         Map<ChatChannel, String> tabLabels,
         Map<ChatChannel, Integer> tabColors,
-        boolean adminTabAllowed
+        boolean adminTabAllowed,
+        Map<ChatChannel, List<String>> chatAliases,
+        Map<ChatChannel, List<String>> switchLetters
 ) implements CustomPacketPayload {
 
     public static final Type<UiConfigSyncPacket> TYPE =
@@ -45,7 +53,7 @@ public record UiConfigSyncPacket(
             }
 
             boolean adminAllowed = buf.readBoolean();
-            return new UiConfigSyncPacket(key, labels, colors, adminAllowed);
+            return new UiConfigSyncPacket(key, labels, colors, adminAllowed, readSelectors(buf), readSelectors(buf));
         }
 
         @Override
@@ -69,9 +77,35 @@ public record UiConfigSyncPacket(
             }
 
             buf.writeBoolean(pkt.adminTabAllowed);
+            writeSelectors(buf, pkt.chatAliases);
+            writeSelectors(buf, pkt.switchLetters);
         }
     };
 
+    private static Map<ChatChannel, List<String>> readSelectors(RegistryFriendlyByteBuf buf) {
+        Map<ChatChannel, List<String>> out = new EnumMap<>(ChatChannel.class);
+        ChatChannel[] channels = ChatChannel.values();
+        int n = buf.readVarInt();
+        for (int i = 0; i < n; i++) {
+            int ch = buf.readVarInt();
+            int m = buf.readVarInt();
+            List<String> list = new ArrayList<>(Math.min(m, 64));
+            for (int j = 0; j < m; j++) list.add(buf.readUtf(MultiChatConfig.MAX_SELECTOR_LENGTH));
+            if (ch >= 0 && ch < channels.length) out.put(channels[ch], list);
+        }
+        return out;
+    }
+
+    private static void writeSelectors(RegistryFriendlyByteBuf buf, Map<ChatChannel, List<String>> selectors) {
+        buf.writeVarInt(selectors == null ? 0 : selectors.size());
+        if (selectors == null) return;
+        for (var e : selectors.entrySet()) {
+            buf.writeVarInt(e.getKey().ordinal());
+            buf.writeVarInt(e.getValue().size());
+            for (String s : e.getValue()) buf.writeUtf(s, MultiChatConfig.MAX_SELECTOR_LENGTH);
+        }
+    }
+
     @Override
     public Type<? extends CustomPacketPayload> type() {
         return TYPE;
@@ -79,7 +113,8 @@ public record UiConfigSyncPacket(
 
     public static void handle(final UiConfigSyncPacket pkt, final IPayloadContext ctx) {
         ctx.enqueueWork(() -> {
-            ClientUiConfig.applyServerSync(pkt.switchKey, pkt.tabLabels, pkt.tabColors, pkt.adminTabAllowed);
+            ClientUiConfig.applyServerSync(pkt.switchKey, pkt.tabLabels, pkt.tabColors, pkt.adminTabAllowed,
+                    pkt.chatAliases, pkt.switchLetters);
         }).exceptionally(ex -> {
             // Don't crash client for sync errors
             ctx.player().sendSystemMessage(Component.literal("[AvilixChat] UI sync failed: " + ex.getMessage()));
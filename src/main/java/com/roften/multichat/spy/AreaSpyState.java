@@ -1,5 +1,6 @@
 package com.roften.multichat.spy;
 
+import com.roften.multichat.chat.server.OutboundChat;
 import com.roften.multichat.db.ChatLogDatabase;
 import net.minecraft.ChatFormatting;
 import net.minecraft.network.chat.Component;
@@ -107,7 +108,7 @@ public final class AreaSpyState {
             }
 
             MutableComponent finalMsg = msg;
-            ChatLogDatabase.runWithoutMixinSystemLogging(() -> admin.sendSystemMessage(finalMsg));
+            ChatLogDatabase.runWithoutMixinSystemLogging(() -> OutboundChat.line(admin, finalMsg));
         }
     }
 
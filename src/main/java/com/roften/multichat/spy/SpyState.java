@@ -63,7 +63,7 @@ public final class SpyState {
      */
     public static boolean hasSpyPermission(ServerPlayer player) {
         if (player == null) return false;
-        return Perms.has(player.createCommandSourceStack(), NODE_SPY);
+        return Perms.has(player, NODE_SPY);
     }
 
     public static boolean isEnabled(ServerPlayer player) {
@@ -0,0 +1,128 @@
+package com.roften.multichat.chat.server;
+
+import net.minecraft.core.registries.Registries;
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.level.Level;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Ring eviction and the spatial index of {@link ChatHistoryBuffer}: every evicted record must leave its
+ * cell, also for coordinates whose double and float values fall into different cells.
+ */
+class ChatHistoryBufferTest {
+    private static final ResourceKey<Level> OVERWORLD =
+            ResourceKey.create(Registries.DIMENSION, ResourceLocation.withDefaultNamespace("overworld"));
+    private static final ResourceKey<Level> NETHER =
+            ResourceKey.create(Registries.DIMENSION, ResourceLocation.withDefaultNamespace("the_nether"));
+    private static final UUID SENDER = new UUID(1L, 2L);
+
+    /** Double coordinates next to a 64-block cell edge, where (float) x rounds across it. */
+    private static final double[] EDGES = {63.99999999, 127.999999999, -64.000000001, 102399.999, -0.00000001, 32.5};
+
+    @BeforeEach
+    void reset() {
+        ChatHistoryBuffer.clear();
+        ChatHistoryBuffer.resize(100);
+        ChatHistoryBuffer.clear();
+    }
+
+    private static void fill(int n) {
+        for (int i = 0; i < n; i++) {
+            double x = EDGES[i % EDGES.length];
+            double z = EDGES[(i / EDGES.length) % EDGES.length];
+            ChatHistoryBuffer.recordLocal(i % 3 == 0 ? NETHER : OVERWORLD, x, 70, z, SENDER, "Steve", "msg " + i);
+        }
+    }
+
+    private static void assertIndexed(int expected) {
+        assertEquals(expected, ChatHistoryBuffer.size());
+        assertEquals(expected, ChatHistoryBuffer.indexedCount());
+    }
+
+    @Test
+    void evictionUnindexesCellEdgeRecords() {
+        fill(50);
+        assertIndexed(50);
+        // Wraps the 100-slot ring several times.
+        fill(1000);
+        assertIndexed(100);
+    }
+
+    @Test
+    void queryFindsCellEdgeRecords() {
+        ChatHistoryBuffer.recordLocal(OVERWORLD, 63.99999999, 70, 63.99999999, SENDER, "Steve", "edge");
+        ChatHistoryBuffer.recordLocal(OVERWORLD, 102399.999, 70, 0, SENDER, "Steve", "far");
+
+        List<ChatHistoryBuffer.Stored> near = ChatHistoryBuffer.queryStored(OVERWORLD, 63.5, 70, 63.5, 2, 5);
+        assertEquals(1, near.size());
+        assertEquals("edge", near.get(0).text());
+
+        List<ChatHistoryBuffer.Stored> far = ChatHistoryBuffer.queryStored(OVERWORLD, 102399.5, 70, 0.5, 2, 5);
+        assertEquals(1, far.size());
+        assertEquals("far", far.get(0).text());
+
+        assertTrue(ChatHistoryBuffer.queryStored(NETHER, 63.5, 70, 63.5, 2, 5).isEmpty());
+    }
+
+    @Test
+    void resizeKeepsNewestAndIndex() {
+        fill(300);
+        ChatHistoryBuffer.resize(150);
+        assertIndexed(100);
+        fill(300);
+        assertIndexed(150);
+
+        ChatHistoryBuffer.resize(100);
+        assertIndexed(100);
+        List<ChatHistoryBuffer.Stored> all = ChatHistoryBuffer.export();
+        assertEquals("msg 299", all.get(all.size() - 1).text());
+        assertEquals("msg 200", all.get(0).text());
+
+        fill(500);
+        assertIndexed(100);
+    }
+
+    @Test
+    void restorePutsOlderRecordsInFrontAndKeepsIndex() {
+        fill(80);
+        List<ChatHistoryBuffer.Stored> persisted = ChatHistoryBuffer.export();
+
+        ChatHistoryBuffer.clear();
+        ChatHistoryBuffer.recordLocal(OVERWORLD, 63.99999999, 70, 0, SENDER, "Steve", "live");
+        ChatHistoryBuffer.restore(persisted);
+
+        // Room for 99 older records, so all 80 fit; the live record stays newest.
+        assertIndexed(81);
+        List<ChatHistoryBuffer.Stored> all = ChatHistoryBuffer.export();
+        assertEquals("msg 0", all.get(0).text());
+        assertEquals("live", all.get(all.size() - 1).text());
+
+        // Only the newest older records that fit next to the live ones are kept.
+        ChatHistoryBuffer.restore(persisted);
+        assertIndexed(100);
+        assertEquals("live", ChatHistoryBuffer.export().get(99).text());
+
+        fill(400);
+        assertIndexed(100);
+    }
+
+    @Test
+    void deferredOlderRecordsAreMergedOnFirstQuery() {
+        fill(30);
+        List<ChatHistoryBuffer.Stored> persisted = ChatHistoryBuffer.export();
+        ChatHistoryBuffer.clear();
+
+        ChatHistoryBuffer.deferOlder(() -> persisted);
+        assertIndexed(0);
+        ChatHistoryBuffer.queryStored(OVERWORLD, 0, 70, 0, 1, 5);
+        assertIndexed(30);
+    }
+}
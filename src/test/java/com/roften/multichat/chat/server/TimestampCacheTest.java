@@ -0,0 +1,52 @@
+package com.roften.multichat.chat.server;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * {@code chatTimeFormat}/{@code deathTimeFormat} come straight from the config; a bad pattern must fall
+ * back to the default instead of failing every routed line.
+ */
+class TimestampCacheTest {
+
+    @Test
+    void validPatternIsKept() {
+        ChatFormats.TimestampCache c = new ChatFormats.TimestampCache("HH:mm:ss", "HH:mm");
+        assertEquals("HH:mm:ss", c.pattern());
+        assertTrue(c.now(false).getString().matches("\\[\\d\\d:\\d\\d:\\d\\d]"));
+    }
+
+    @Test
+    void unparsablePatternFallsBack() {
+        ChatFormats.TimestampCache c = new ChatFormats.TimestampCache("HH:mm {", "HH:mm");
+        assertEquals("HH:mm", c.pattern());
+    }
+
+    /** Parses, but has date fields a time of day cannot fill. */
+    @Test
+    void dateFieldsFallBack() {
+        ChatFormats.TimestampCache c = new ChatFormats.TimestampCache("dd.MM HH:mm", "HH:mm");
+        assertEquals("HH:mm", c.pattern());
+        assertDoesNotThrow(() -> c.now(false));
+        assertDoesNotThrow(() -> c.at(0L, true));
+        assertTrue(c.now(true).getString().matches("\\[\\d\\d:\\d\\d]"));
+    }
+
+    /** Structured-chat headers carry the pattern; one that does not fit the packet must not be used. */
+    @Test
+    void overlongPatternFallsBack() {
+        String longPattern = "HH:mm" + "'.'".repeat(30);
+        ChatFormats.TimestampCache c = new ChatFormats.TimestampCache(longPattern, "HH:mm");
+        assertEquals("HH:mm", c.pattern());
+    }
+
+    @Test
+    void zoneFieldsFallBack() {
+        ChatFormats.TimestampCache c = new ChatFormats.TimestampCache("HH:mm z", "HH:mm:ss");
+        assertEquals("HH:mm:ss", c.pattern());
+        assertDoesNotThrow(() -> c.now(false));
+    }
+}
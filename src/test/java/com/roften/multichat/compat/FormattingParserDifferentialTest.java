@@ -0,0 +1,213 @@
+package com.roften.multichat.compat;
+
+import com.roften.multichat.compat.baseline.OldLegacyComponentParser;
+import com.roften.multichat.compat.baseline.OldMiniMessageComponentParser;
+import net.minecraft.ChatFormatting;
+import net.minecraft.network.chat.ClickEvent;
+import net.minecraft.network.chat.Component;
+import net.minecraft.network.chat.HoverEvent;
+import net.minecraft.network.chat.Style;
+import net.minecraft.network.chat.TextColor;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Compares the single-pass parsers with the pre-rewrite ones in {@code compat.baseline}.
+ *
+ * <p>On the corpus ({@code corpus/formatting.txt}) both must produce the same output; every intended
+ * difference is pinned by its own test below, with what the old parser did next to what we do now.</p>
+ */
+class FormattingParserDifferentialTest {
+
+    /** One visible character and how it is drawn; unset and {@code false} decorations compare equal. */
+    private record Glyph(int codePoint, int color, boolean bold, boolean italic, boolean underlined,
+                         boolean strikethrough, boolean obfuscated,
+                         ClickEvent click, HoverEvent hover, String insertion) {
+
+        static Glyph of(int codePoint, Style s) {
+            TextColor c = s.getColor();
+            return new Glyph(codePoint, c == null ? -1 : c.getValue(), s.isBold(), s.isItalic(), s.isUnderlined(),
+                    s.isStrikethrough(), s.isObfuscated(), s.getClickEvent(), s.getHoverEvent(), s.getInsertion());
+        }
+    }
+
+    @BeforeAll
+    static void exactGradients() {
+        // Unquantized colors, so the gradient assertions can name the stop colors.
+        MiniMessageComponentParser.configureGradients(1, 16);
+    }
+
+    // --- corpus ---
+
+    static List<String> corpus() throws IOException {
+        try (InputStream in = FormattingParserDifferentialTest.class.getResourceAsStream("/corpus/formatting.txt")) {
+            assertNotNull(in, "missing corpus/formatting.txt");
+            List<String> out = new ArrayList<>();
+            BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith("= ") || line.startsWith("~ ")) out.add(line);
+            }
+            return out;
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("corpus")
+    void corpusMatchesOldParser(String line) {
+        String input = line.substring(2);
+        Component before = parseOld(input);
+        Component after = parseNew(input);
+        if (line.charAt(0) == '=') {
+            assertEquals(glyphs(before), glyphs(after), input);
+        } else {
+            assertEquals(before.getString(), after.getString(), input);
+        }
+    }
+
+    // --- intended differences ---
+
+    /** A closing tag restores the style from before its open tag, including legacy codes typed earlier. */
+    @Test
+    void misNestedCloseRestoresStyleOfItsOpenTag() {
+        String input = "&l<red>a<italic>b</red>c</italic>";
+
+        List<Glyph> before = glyphs(parseOld(input));
+        List<Glyph> after = glyphs(parseNew(input));
+        assertEquals("abc", text(after));
+
+        // Old: the tag stack did not know about &l, so </red> fell back to no style at all.
+        assertFalse(before.get(2).bold());
+        assertTrue(after.get(2).bold());
+        assertEquals(-1, after.get(2).color());
+        assertFalse(after.get(2).italic());
+    }
+
+    /** Same-name gradients nest, and closing tags match case-insensitively. */
+    @Test
+    void nestedGradientClosesAtItsOwnTag() {
+        List<Glyph> nested = glyphs(parseNew("<gradient:#FF0000:#0000FF>a<gradient:#00FF00:#FFFF00>b</gradient>c</gradient>d"));
+        assertEquals("abcd", text(nested));
+        assertNotEquals(-1, nested.get(2).color());
+        assertEquals(-1, nested.get(3).color());
+
+        List<Glyph> mixedCase = glyphs(parseNew("<GRADIENT:#FF0000:#0000FF>ab</Gradient>c"));
+        assertEquals("abc", text(mixedCase));
+        assertEquals(0xFF0000, mixedCase.get(0).color());
+        assertEquals(0x0000FF, mixedCase.get(1).color());
+        assertEquals(-1, mixedCase.get(2).color());
+    }
+
+    /** Quoted arguments may contain '>' and ':'. */
+    @Test
+    void quotedArgumentsKeepTheTagTogether() {
+        String input = "<hover:show_text:'a > b'>x</hover>";
+
+        // Old: the tag ended at the first '>', the rest of the hover text leaked into the chat.
+        assertEquals(" b'>x", parseOld(input).getString());
+        assertEquals("x", parseNew(input).getString());
+
+        HoverEvent hover = glyphs(MiniMessageComponentParser.parse(input, true)).get(0).hover();
+        assertNotNull(hover);
+        assertEquals("a > b", hover.getValue(HoverEvent.Action.SHOW_TEXT).getString());
+    }
+
+    /** Click/hover/insertion apply only to trusted text; player text strips them as before. */
+    @Test
+    void interactiveTagsOnlyForTrustedText() {
+        String input = "<click:run_command:'/spawn'><insertion:hi>go</insertion></click>";
+
+        Glyph old = glyphs(parseOld(input)).get(0);
+        Glyph untrusted = glyphs(MiniMessageComponentParser.parse(input, false)).get(0);
+        assertNull(old.click());
+        assertNull(untrusted.click());
+        assertNull(untrusted.insertion());
+
+        Glyph trusted = glyphs(MiniMessageComponentParser.parse(input, true)).get(0);
+        assertEquals(new ClickEvent(ClickEvent.Action.RUN_COMMAND, "/spawn"), trusted.click());
+        assertEquals("hi", trusted.insertion());
+
+        // Trusted or not, formatted text never forges our routing markers or opens local files.
+        assertNull(glyphs(MiniMessageComponentParser.parse("<insertion:avilixchat:ch:G>x", true)).get(0).insertion());
+        assertNull(glyphs(MiniMessageComponentParser.parse("<click:open_file:'/etc/passwd'>x", true)).get(0).click());
+    }
+
+    /** Gradient stops may be color names. */
+    @Test
+    void namedGradientStops() {
+        String input = "<gradient:gold:red>ab</gradient>";
+
+        // Old: only #RRGGBB stops counted, so the text stayed uncolored.
+        List<Glyph> before = glyphs(parseOld(input));
+        assertEquals(-1, before.get(0).color());
+        assertEquals(-1, before.get(1).color());
+
+        List<Glyph> after = glyphs(parseNew(input));
+        assertEquals(TextColor.fromLegacyFormat(ChatFormatting.GOLD).getValue(), after.get(0).color());
+        assertEquals(TextColor.fromLegacyFormat(ChatFormatting.RED).getValue(), after.get(1).color());
+    }
+
+    /** {@code \&} is a literal '&' and unknown codes keep the character the player typed. */
+    @Test
+    void escapedAmpersandAndUnknownCodes() {
+        // Old: \& was unescaped first and then turned into a color code anyway.
+        List<Glyph> before = glyphs(parseOld("\\&a text"));
+        assertEquals(" text", text(before));
+        assertEquals(TextColor.fromLegacyFormat(ChatFormatting.GREEN).getValue(), before.get(0).color());
+
+        List<Glyph> after = glyphs(parseNew("\\&a text"));
+        assertEquals("&a text", text(after));
+        assertEquals(-1, after.get(0).color());
+
+        assertEquals("§z", parseOld("&z").getString());
+        assertEquals("&z", parseNew("&z").getString());
+    }
+
+    // --- helpers ---
+
+    /** AUTO detection as in chat: MiniMessage if it looks like it, legacy otherwise. */
+    private static Component parseNew(String s) {
+        return MiniMessageComponentParser.looksLikeMiniMessage(s)
+                ? MiniMessageComponentParser.parse(s)
+                : LegacyComponentParser.parse(s);
+    }
+
+    private static Component parseOld(String s) {
+        return OldMiniMessageComponentParser.looksLikeMiniMessage(s)
+                ? OldMiniMessageComponentParser.parse(s)
+                : OldLegacyComponentParser.parse(s);
+    }
+
+    private static List<Glyph> glyphs(Component c) {
+        List<Glyph> out = new ArrayList<>();
+        c.visit((style, text) -> {
+            text.codePoints().forEach(cp -> out.add(Glyph.of(cp, style)));
+            return Optional.empty();
+        }, Style.EMPTY);
+        return out;
+    }
+
+    private static String text(List<Glyph> glyphs) {
+        StringBuilder sb = new StringBuilder();
+        for (Glyph g : glyphs) sb.appendCodePoint(g.codePoint());
+        return sb.toString();
+    }
+}